@@ -1,18 +1,13 @@
 package com.codefork.refine;
 
-import org.apache.commons.logging.LogFactory;
-import org.ehcache.config.CacheConfiguration;
-import org.ehcache.config.builders.CacheConfigurationBuilder;
-import org.ehcache.config.builders.ExpiryPolicyBuilder;
-import org.ehcache.config.builders.ResourcePoolsBuilder;
-import org.ehcache.core.config.DefaultConfiguration;
-import org.ehcache.jsr107.EhcacheCachingProvider;
+import com.codefork.refine.cache.CacheManagers;
+import com.codefork.refine.cache.HeapCacheFactory;
+import com.codefork.refine.concurrency.ClientContextFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.jcache.JCacheCacheManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -20,15 +15,15 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.filter.CommonsRequestLoggingFilter;
 
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Properties;
 
 @SpringBootApplication
 @EnableCaching
 @EnableWebSecurity
 public class Application {
     public static final String CACHE_DEFAULT = "default";
+    public static final String CACHE_ORCID_RECORDS = "orcid-records";
+    public static final String CACHE_VIAF_CLUSTERS = "viaf-clusters";
 
     public static void main(String[] args) {
         ApplicationContext ctx = SpringApplication.run(Application.class, args);
@@ -36,38 +31,19 @@ public class Application {
 
     @Bean
     public CacheManager cacheManager(@Autowired Config config) {
-        long ttl = Long.valueOf(config.getProperties().getProperty(Config.PROP_CACHE_TTL));
-
-        config.getProperties().getProperty(Config.PROP_CACHE_SIZE);
-
-        MemSize memSize = MemSize.valueOf(config.getProperties().getProperty(Config.PROP_CACHE_SIZE));
-
-        LogFactory.getLog(getClass()).info(
-                String.format("Initializing cache TTL=%d secs, size=%d %s",
-                        ttl, memSize.getSize(), memSize.getUnit().toString()));
-
-        org.ehcache.config.CacheConfiguration<Object, Object> cacheConfiguration = CacheConfigurationBuilder
-                .newCacheConfigurationBuilder(Object.class, Object.class,
-                        ResourcePoolsBuilder.newResourcePoolsBuilder()
-                                .heap(memSize.getSize(), memSize.getUnit()))
-                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ttl)))
-                .build();
-
-        Map<String, CacheConfiguration<?, ?>> caches = new HashMap<>();
-        caches.put(CACHE_DEFAULT, cacheConfiguration);
-
-        EhcacheCachingProvider provider = (EhcacheCachingProvider) javax.cache.Caching.getCachingProvider();
-
-        // when our cacheManager bean is re-created several times for
-        // diff test configurations, this provider seems to hang on to state
-        // causing cache settings to not be right. so we always close().
-        provider.close();
-
-        DefaultConfiguration configuration = new DefaultConfiguration(
-                caches, provider.getDefaultClassLoader());
-
-        return new JCacheCacheManager(
-                provider.getCacheManager(provider.getDefaultURI(), configuration));
+        Properties props = config.getProperties();
+        CacheManager cacheManager = CacheManagers.create(CACHE_DEFAULT, props);
+        MemSize orcidRecordsSize = MemSize.valueOf(props.getProperty(Config.PROP_CACHE_ORCID_RECORDS_SIZE));
+        if(orcidRecordsSize.getSize() > 0 && cacheManager instanceof HeapCacheFactory) {
+            ((HeapCacheFactory) cacheManager).addHeapCache(CACHE_ORCID_RECORDS,
+                    Long.parseLong(props.getProperty(Config.PROP_CACHE_ORCID_RECORDS_TTL)), orcidRecordsSize);
+        }
+        MemSize viafClustersSize = MemSize.valueOf(props.getProperty(Config.PROP_CACHE_VIAF_CLUSTERS_SIZE));
+        if(viafClustersSize.getSize() > 0 && cacheManager instanceof HeapCacheFactory) {
+            ((HeapCacheFactory) cacheManager).addHeapCache(CACHE_VIAF_CLUSTERS,
+                    Long.parseLong(props.getProperty(Config.PROP_CACHE_TTL)), viafClustersSize);
+        }
+        return cacheManager;
     }
 
     /**
@@ -87,6 +63,14 @@ public class Application {
         return filter;
     }
 
+    /**
+     * identifies clients for fair queuing in thread pools
+     */
+    @Bean
+    public ClientContextFilter clientContextFilter(@Autowired Config config) {
+        return new ClientContextFilter(config.getProperties().getProperty(Config.PROP_THREADPOOL_FAIR_CLIENT_HEADER));
+    }
+
     @Bean
     SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         return http
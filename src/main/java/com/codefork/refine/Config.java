@@ -16,8 +16,34 @@ import java.util.Properties;
 public class Config {
 
     public static final String PROP_CACHE_ENABLED = "cache.enabled";
+    public static final String PROP_CACHE_PROVIDER = "cache.provider";
     public static final String PROP_CACHE_TTL = "cache.ttl";
+    public static final String PROP_CACHE_TTL_SOFT = "cache.ttl.soft";
+    public static final String PROP_CACHE_TTL_EMPTY = "cache.ttl.empty";
+    public static final String PROP_CACHE_TTL_ERROR = "cache.ttl.error";
+    public static final String PROP_CACHE_TTL_REVALIDATE = "cache.ttl.revalidate";
+    public static final String PROP_CACHE_FETCH_LIMIT = "cache.fetch.limit";
+    public static final String PROP_CACHE_REFRESH_AHEAD = "cache.refresh.ahead";
+    public static final String PROP_CACHE_REFRESH_AHEAD_HITS = "cache.refresh.ahead.hits";
     public static final String PROP_CACHE_SIZE = "cache.size";
+    public static final String PROP_CACHE_OFFHEAP_SIZE = "cache.offheap.size";
+    public static final String PROP_CACHE_DISK_SIZE = "cache.disk.size";
+    public static final String PROP_CACHE_DISK_DIR = "cache.disk.dir";
+    public static final String PROP_CACHE_ORCID_RECORDS_TTL = "cache.orcid.records.ttl";
+    public static final String PROP_CACHE_ORCID_RECORDS_SIZE = "cache.orcid.records.size";
+    public static final String PROP_CACHE_VIAF_CLUSTERS_SIZE = "cache.viaf.clusters.size";
+    public static final String PROP_CACHE_SNAPSHOT_FILE = "cache.snapshot.file";
+    public static final String PROP_CACHE_SNAPSHOT_INTERVAL = "cache.snapshot.interval";
+    public static final String PROP_CACHE_SNAPSHOT_LOAD = "cache.snapshot.load";
+    public static final String PROP_CACHE_WARMUP_QUERIES = "cache.warmup.queries";
+    public static final String PROP_CACHE_WARMUP_TIMEOUT = "cache.warmup.timeout";
+    public static final String PROP_THREADPOOL_VIRTUAL = "threadpool.virtual";
+    public static final String PROP_THREADPOOL_LIMIT_ALGORITHM = "threadpool.limit.algorithm";
+    public static final String PROP_THREADPOOL_FAIR = "threadpool.fair";
+    public static final String PROP_THREADPOOL_FAIR_WEIGHT = "threadpool.fair.weight";
+    public static final String PROP_THREADPOOL_FAIR_CLIENT_HEADER = "threadpool.fair.client.header";
+    public static final String PROP_REQUEST_DEADLINE_MS = "request.deadline.ms";
+    public static final String PROP_HTTP_COMPRESSION = "http.compression";
 
     private static final String CONFIG_FILENAME = "conciliator.properties";
 
@@ -26,8 +52,30 @@ public class Config {
 
     public Config() {
         properties.put(PROP_CACHE_ENABLED, "true");
+        properties.put(PROP_CACHE_PROVIDER, "ehcache");
         properties.put(PROP_CACHE_TTL, "3600");
+        properties.put(PROP_CACHE_TTL_SOFT, "0");
+        properties.put(PROP_CACHE_TTL_ERROR, "0");
+        properties.put(PROP_CACHE_TTL_REVALIDATE, "0");
+        properties.put(PROP_CACHE_FETCH_LIMIT, "0");
+        properties.put(PROP_CACHE_REFRESH_AHEAD, "0");
+        properties.put(PROP_CACHE_REFRESH_AHEAD_HITS, "3");
         properties.put(PROP_CACHE_SIZE, "64MB");
+        properties.put(PROP_CACHE_OFFHEAP_SIZE, "0MB");
+        properties.put(PROP_CACHE_DISK_SIZE, "0MB");
+        properties.put(PROP_CACHE_DISK_DIR, "cache");
+        properties.put(PROP_CACHE_ORCID_RECORDS_TTL, "86400");
+        properties.put(PROP_CACHE_ORCID_RECORDS_SIZE, "16MB");
+        properties.put(PROP_CACHE_VIAF_CLUSTERS_SIZE, "32MB");
+        properties.put(PROP_CACHE_SNAPSHOT_FILE, "cache-snapshot.gz");
+        properties.put(PROP_CACHE_SNAPSHOT_INTERVAL, "0");
+        properties.put(PROP_CACHE_SNAPSHOT_LOAD, "false");
+        properties.put(PROP_CACHE_WARMUP_TIMEOUT, "300");
+        properties.put(PROP_THREADPOOL_VIRTUAL, "false");
+        properties.put(PROP_THREADPOOL_LIMIT_ALGORITHM, "none");
+        properties.put(PROP_THREADPOOL_FAIR, "false");
+        properties.put(PROP_REQUEST_DEADLINE_MS, "0");
+        properties.put(PROP_HTTP_COMPRESSION, "true");
 
         properties.put("datasource.orcid.name", "ORCID");
         properties.put("datasource.orcidsmartnames.name", "ORCID - Smart Names Mode");
@@ -25,4 +25,9 @@ public class MemSize {
         String unitStr = val.replaceAll("[0-9]", "");
         return new MemSize(Long.valueOf(sizeStr), MemoryUnit.valueOf(unitStr));
     }
+
+    @Override
+    public String toString() {
+        return size + unit.toString();
+    }
 }
@@ -4,9 +4,13 @@ package com.codefork.refine;
 import com.codefork.refine.resources.NameType;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.text.Normalizer;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 /**
  * Represents a single query in a request sent by Open Refine.
@@ -19,6 +23,8 @@ import java.util.Map;
  */
 public class SearchQuery {
 
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     private String query;
     private int limit;
     private NameType nameType;
@@ -99,6 +105,23 @@ public class SearchQuery {
         this.properties = properties;
     }
 
+    public SearchQuery copy() {
+        SearchQuery copy = new SearchQuery(query, limit, nameType, typeStrict, properties);
+        copy.setViafSource(viafSource);
+        copy.setViafProxyMode(isViafProxyMode);
+        copy.setOrcidSmartNamesMode(isOrcidSmartNamesMode);
+        return copy;
+    }
+
+    /**
+     * @return a copy of this query, with a different limit
+     */
+    public SearchQuery withLimit(int limit) {
+        SearchQuery copy = copy();
+        copy.setLimit(limit);
+        return copy;
+    }
+
     public String getQuery() {
         return query;
     }
@@ -163,16 +186,68 @@ public class SearchQuery {
         isOrcidSmartNamesMode = orcidSmartNamesMode;
     }
 
+    /**
+     * @return key that's the same for queries that would get the same results,
+     * including their properties, which some data sources search on
+     */
     public String getHashKey() {
-        String buf = ((query != null ? query : "") + "|" +
-                limit + "|" +
-                (nameType != null ? nameType.getId() : "") + "|" +
-                (typeStrict != null ? typeStrict : "") + "|" +
-                (viafSource != null ? viafSource : "") + "|" +
-                String.valueOf(isViafProxyMode) + "|" +
-                String.valueOf(isOrcidSmartNamesMode));
-
-        return buf;
+        StringBuilder buf = new StringBuilder();
+        buf.append(query != null ? query : "").append("|")
+                .append(limit).append("|")
+                .append(nameType != null ? nameType.getId() : "").append("|")
+                .append(typeStrict != null ? typeStrict : "").append("|")
+                .append(viafSource != null ? viafSource : "").append("|")
+                .append(isViafProxyMode).append("|")
+                .append(isOrcidSmartNamesMode);
+        appendProperties(buf, false);
+        return buf.toString();
+    }
+
+    /**
+     * Like getHashKey(), but the same for queries that only differ trivially
+     * (see normalize()), and optionally for any limit. Results shared this
+     * way need re-scoring, since scores usually depend on the exact query.
+     */
+    public String getCanonicalKey(boolean includeLimit) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(normalize(query)).append("|")
+                .append(includeLimit ? String.valueOf(limit) : "").append("|")
+                .append(nameType != null ? nameType.getId() : "").append("|")
+                .append(typeStrict != null ? typeStrict : "").append("|")
+                .append(viafSource != null ? viafSource : "").append("|")
+                .append(isViafProxyMode).append("|")
+                .append(isOrcidSmartNamesMode);
+        appendProperties(buf, true);
+        return buf.toString();
+    }
+
+    /**
+     * Appends properties to buf, sorted so their order doesn't matter.
+     */
+    private void appendProperties(StringBuilder buf, boolean normalizeValues) {
+        if(properties != null) {
+            Map<String, String> sorted = new TreeMap<>();
+            for(Map.Entry<String, PropertyValue> entry : properties.entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()),
+                        entry.getValue() != null ? entry.getValue().asString() : "");
+            }
+            for(Map.Entry<String, String> entry : sorted.entrySet()) {
+                String value = normalizeValues ? normalize(entry.getValue()) : entry.getValue();
+                buf.append("|").append(entry.getKey()).append("=").append(value);
+            }
+        }
+    }
+
+    /**
+     * @return s in Unicode NFC form, lower-cased, with runs of whitespace
+     * collapsed into single spaces, and trimmed
+     */
+    public static String normalize(String s) {
+        if(s == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(s, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
     }
 
 }
@@ -2,6 +2,7 @@ package com.codefork.refine;
 
 import com.codefork.refine.resources.Result;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -9,12 +10,35 @@ import java.util.List;
 public class SearchResult {
 
     public enum ErrorType {
-        UNKNOWN, TOO_MANY_REQUESTS
+        UNKNOWN, TOO_MANY_REQUESTS, SERVER_ERROR, CLIENT_ERROR, TIMEOUT,
+        // the reconciliation request's deadline passed before this search finished
+        DEADLINE_EXCEEDED,
+        // the same search failed recently and the failure is still cached
+        CACHED_ERROR,
+        // not sent, because the upstream host's circuit breaker is open
+        CIRCUIT_OPEN,
+        // the client went away before this search finished
+        CANCELLED;
+
+        /**
+         * @return the ErrorType for an HTTP error status code
+         */
+        public static ErrorType forStatusCode(int statusCode) {
+            if(statusCode == 429) {
+                return TOO_MANY_REQUESTS;
+            } else if(statusCode >= 500) {
+                return SERVER_ERROR;
+            } else if(statusCode >= 400) {
+                return CLIENT_ERROR;
+            }
+            return UNKNOWN;
+        }
     }
 
     private String key;
     private List<Result> results;
     private ErrorType errorType;
+    private long retryAfterMs = -1;
 
     public SearchResult(String key, List<Result> results) {
         this.key = key;
@@ -26,6 +50,26 @@ public class SearchResult {
         this.errorType = errorType;
     }
 
+    /**
+     * @param retryAfterMs how long the upstream service asked us to wait
+     *                     before trying again, -1 if it didn't say
+     */
+    public SearchResult(String key, ErrorType errorType, long retryAfterMs) {
+        this(key, errorType);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @return a copy of this SearchResult for a different key. The results
+     * list is copied so that holders of each copy can sort it independently.
+     */
+    public SearchResult withKey(String newKey) {
+        if(isSuccessful()) {
+            return new SearchResult(newKey, new ArrayList<>(results));
+        }
+        return new SearchResult(newKey, errorType, retryAfterMs);
+    }
+
     public String getKey() {
         return key;
     }
@@ -41,4 +85,8 @@ public class SearchResult {
     public ErrorType getErrorType() {
         return errorType;
     }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
 }
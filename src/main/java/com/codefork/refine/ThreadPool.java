@@ -1,21 +1,54 @@
 package com.codefork.refine;
 
+import com.codefork.refine.concurrency.ClientContext;
+import com.codefork.refine.concurrency.CoDelAdmission;
+import com.codefork.refine.concurrency.ConcurrencyLimit;
+import com.codefork.refine.concurrency.FairBlockingQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A wrapper around an ExecutorService thread pool.
+ *
+ * By default, this is a fixed-size pool of platform threads. When created
+ * with useVirtualThreads=true on a runtime that supports them (JDK 21+),
+ * each task runs on its own virtual thread instead, and the "pool size"
+ * is a number of permits that caps how many tasks run at once.
+ * shrink() and grow() adjust those permits the same way they would
+ * adjust the number of threads.
+ *
+ * If created with client weights, queued tasks are served fairly between
+ * the clients that submitted them (see FairBlockingQueue) rather than
+ * first come, first served. This only applies to platform threads.
+ *
+ * The pool keeps track of how many tasks are waiting and how long they
+ * wait, so callers can use tryAdmit() to turn work away before the queue
+ * grows without bound.
+ *
+ * If a ConcurrencyLimit is set, the pool size follows that limit instead,
+ * based on samples reported through onSample(); shrink() and grow() then
+ * do nothing.
  */
 public class ThreadPool {
 
     public static final int INITIAL_POOL_SIZE = 4;
+    // default upper bound when a ConcurrencyLimit is used
+    public static final int MAX_POOL_SIZE = 20;
 
     private int initialPoolSize = INITIAL_POOL_SIZE;
 
@@ -26,9 +59,29 @@ public class ThreadPool {
 
     private Log log = LogFactory.getLog(ThreadPool.class);
 
-    private ThreadPoolExecutor executor;
+    private boolean useVirtualThreads = false;
+
+    // client id => weight, if tasks should be queued fairly; null for FIFO
+    private Map<String, Integer> fairQueueWeights;
+
+    private ExecutorService executor;
     private long lastTimePoolAdjusted = 0;
 
+    // only used for virtual threads
+    private AdjustableSemaphore permits;
+    private int permitCount;
+
+    private ConcurrencyLimit concurrencyLimit;
+
+    // tasks submitted but not yet started
+    private final AtomicInteger queued = new AtomicInteger();
+    // moving average of time tasks spend waiting to start
+    private volatile double averageWaitNanos = 0;
+
+    // 0 for unlimited
+    private volatile int maxQueueSize = 0;
+    private volatile CoDelAdmission admission;
+
     public ThreadPool() {
         start();
     }
@@ -38,6 +91,26 @@ public class ThreadPool {
         start();
     }
 
+    public ThreadPool(int initialSize, boolean useVirtualThreads) {
+        this.initialPoolSize = initialSize;
+        this.useVirtualThreads = useVirtualThreads;
+        start();
+    }
+
+    /**
+     * @param fairQueueWeights if not null, queue tasks per client and serve
+     *                         clients in proportion to these weights
+     */
+    public ThreadPool(int initialSize, boolean useVirtualThreads, Map<String, Integer> fairQueueWeights) {
+        this.initialPoolSize = initialSize;
+        this.useVirtualThreads = useVirtualThreads && fairQueueWeights == null;
+        this.fairQueueWeights = fairQueueWeights;
+        if(useVirtualThreads && fairQueueWeights != null) {
+            log.warn("Fair queuing isn't supported with virtual threads, using platform threads");
+        }
+        start();
+    }
+
     public ThreadPool(long waitPeriodBeforeShrinkingMs,
                       long waitPeriodBeforeGrowingMs,
                       long waitPeriodBeforeResetMs) {
@@ -57,13 +130,219 @@ public class ThreadPool {
 
     public void start() {
         if(executor == null || executor.isShutdown()) {
+            if(useVirtualThreads) {
+                executor = newVirtualThreadPerTaskExecutor();
+                if(executor != null) {
+                    log.info("Starting virtual thread executor, permits = " + initialPoolSize);
+                    permits = new AdjustableSemaphore(initialPoolSize);
+                    permitCount = initialPoolSize;
+                    return;
+                }
+                log.warn("Virtual threads aren't supported by this Java runtime, using platform threads");
+                useVirtualThreads = false;
+            }
             log.info("Starting thread pool, size = " + initialPoolSize);
-            executor = new ThreadPoolExecutor(initialPoolSize, initialPoolSize, 0, TimeUnit.HOURS, new LinkedBlockingQueue<>());
+            BlockingQueue<Runnable> queue = fairQueueWeights != null
+                    ? new FairBlockingQueue(fairQueueWeights) : new LinkedBlockingQueue<>();
+            executor = new ThreadPoolExecutor(initialPoolSize, initialPoolSize, 0, TimeUnit.HOURS, queue);
         } else {
             log.info("Thread pool already started, doing nothing.");
         }
     }
 
+    /**
+     * We compile for Java 11, so look this up reflectively.
+     * @return an ExecutorService that starts a new virtual thread for each task,
+     * or null if the runtime doesn't support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if tasks are running on virtual threads
+     */
+    public boolean isUsingVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * @return true if queued tasks are served fairly between clients
+     */
+    public boolean isFair() {
+        return fairQueueWeights != null;
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Sets the algorithm that controls the size of this pool; null
+     * to go back to shrink()/grow().
+     */
+    public synchronized void setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+        if(concurrencyLimit != null) {
+            setPoolSize(concurrencyLimit.getLimit());
+        }
+    }
+
+    /**
+     * Reports how an upstream request made by a task in this pool turned out,
+     * so the ConcurrencyLimit (if any) can adjust the pool size.
+     * @param rttNanos how long the request took
+     * @param dropped true if the request failed due to overload
+     */
+    public void onSample(long rttNanos, boolean dropped) {
+        ConcurrencyLimit limit = concurrencyLimit;
+        if(limit == null) {
+            return;
+        }
+        limit.onSample(rttNanos, getActiveCount(), dropped);
+        int newSize = limit.getLimit();
+        synchronized (this) {
+            int size = getPoolSize();
+            if(newSize != size) {
+                log.debug(String.format("Concurrency limit changed from %d to %d", size, newSize));
+                setPoolSize(newSize);
+            }
+        }
+    }
+
+    /**
+     * @return approximate number of tasks currently running
+     */
+    public int getActiveCount() {
+        if(useVirtualThreads) {
+            synchronized (this) {
+                return Math.max(0, permitCount - permits.availablePermits());
+            }
+        }
+        return ((ThreadPoolExecutor) executor).getActiveCount();
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * @param maxQueueSize number of waiting tasks beyond which tryAdmit()
+     *                     turns work away; 0 for no limit
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public CoDelAdmission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * @param admission decides, based on queue wait times, when tryAdmit()
+     *                  should turn work away; null to never do so
+     */
+    public void setAdmission(CoDelAdmission admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * @return number of tasks waiting to start
+     */
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    /**
+     * @return moving average of how long tasks wait before they start, in ms
+     */
+    public long getAverageWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis((long) averageWaitNanos);
+    }
+
+    /**
+     * Checks whether the pool can take on more work. This doesn't reserve
+     * anything; it's meant to be called once for a whole batch of tasks,
+     * so a batch is either accepted or rejected as a unit.
+     *
+     * @param numTasks number of tasks the caller wants to submit
+     * @return false if the queue is full or has been backed up for too long
+     */
+    public boolean tryAdmit(int numTasks) {
+        int queueSize = queued.get();
+        CoDelAdmission admission = this.admission;
+        int maxQueueSize = this.maxQueueSize;
+        if(admission != null && admission.isOverloaded(queueSize)) {
+            return false;
+        }
+        // let a batch through when nothing's waiting, even if it's larger than the max
+        return maxQueueSize <= 0 || queueSize == 0 || queueSize + numTasks <= maxQueueSize;
+    }
+
+    private void onDequeue(long waitNanos) {
+        queued.decrementAndGet();
+        averageWaitNanos = averageWaitNanos * 0.9 + waitNanos * 0.1;
+        CoDelAdmission admission = this.admission;
+        if(admission != null) {
+            admission.onDequeue(waitNanos);
+        }
+    }
+
+    /**
+     * Hands off a task to the executor. For virtual threads, the task
+     * waits for a permit on its own thread before it runs. For fair queuing,
+     * the task is tagged with the submitting thread's ClientContext.
+     */
+    private void execute(Runnable command) {
+        long enqueuedAt = System.nanoTime();
+        queued.incrementAndGet();
+        Runnable timed = () -> {
+            onDequeue(System.nanoTime() - enqueuedAt);
+            command.run();
+        };
+        try {
+            if(useVirtualThreads) {
+                executor.execute(() -> {
+                    PermitTask<?> task = command instanceof PermitTask ? (PermitTask<?>) command : null;
+                    try {
+                        if(task != null) {
+                            task.waiter = Thread.currentThread();
+                        }
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        // cancelled or shut down while waiting for a permit: the task never runs
+                        queued.decrementAndGet();
+                        if(task != null) {
+                            task.cancel(false);
+                        }
+                        return;
+                    } finally {
+                        if(task != null) {
+                            task.waiter = null;
+                        }
+                    }
+                    try {
+                        timed.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } else if(fairQueueWeights != null) {
+                executor.execute(new FairBlockingQueue.ClientTask(ClientContext.current(), timed));
+            } else {
+                executor.execute(timed);
+            }
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
     /**
      * Submit a task to the pool, returning a Future immediately.
      * Also tries to grow the pool, if necessary.
@@ -79,31 +358,63 @@ public class ThreadPool {
                 lastTimePoolAdjusted = 0;
             }
         }
-        return executor.submit(task);
+        FutureTask<T> future = useVirtualThreads ? new PermitTask<>(task) : new FutureTask<>(task);
+        execute(future);
+        return future;
     }
 
     /**
-     * Creates a ExecutorCompletionService which efficiently handles retrieving results
-     * for a batch of tasks in the order in which they finish.
+     * For virtual threads: a task whose cancel() also interrupts its thread
+     * while it's still waiting for a permit, which FutureTask alone wouldn't,
+     * since the task isn't running yet. That's safe even for cancel(false),
+     * since the task itself never gets the interrupt.
      */
-    public <T> ExecutorCompletionService<T> createCompletionService(Class<T> resultClass) {
-        return new ExecutorCompletionService<T>(executor);
+    private static class PermitTask<T> extends FutureTask<T> {
+
+        private volatile Thread waiter;
+
+        PermitTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Thread t = waiter;
+            if(cancelled && t != null) {
+                t.interrupt();
+            }
+            return cancelled;
+        }
     }
 
     /**
-     * @return current size of the thread pool
+     * @return current size of the thread pool (number of permits, for virtual threads)
      */
-    public int getPoolSize() {
-        return executor.getCorePoolSize();
+    public synchronized int getPoolSize() {
+        if(useVirtualThreads) {
+            return permitCount;
+        }
+        return ((ThreadPoolExecutor) executor).getCorePoolSize();
     }
 
-    public void setPoolSize(int newSize) {
-        if(newSize > executor.getCorePoolSize()) {
-            executor.setMaximumPoolSize(newSize);
-            executor.setCorePoolSize(newSize);
+    public synchronized void setPoolSize(int newSize) {
+        if(useVirtualThreads) {
+            if(newSize > permitCount) {
+                permits.release(newSize - permitCount);
+            } else if(newSize < permitCount) {
+                permits.reducePermits(permitCount - newSize);
+            }
+            permitCount = newSize;
+            return;
+        }
+        ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+        if(newSize > threadPoolExecutor.getCorePoolSize()) {
+            threadPoolExecutor.setMaximumPoolSize(newSize);
+            threadPoolExecutor.setCorePoolSize(newSize);
         } else {
-            executor.setCorePoolSize(newSize);
-            executor.setMaximumPoolSize(newSize);
+            threadPoolExecutor.setCorePoolSize(newSize);
+            threadPoolExecutor.setMaximumPoolSize(newSize);
         }
     }
 
@@ -111,6 +422,9 @@ public class ThreadPool {
      * Shrink the size of the pool, if we can.
      */
     public synchronized void shrink() {
+        if(concurrencyLimit != null) {
+            return;
+        }
         int size = getPoolSize();
         if(size > 1) {
             long now = System.currentTimeMillis();
@@ -129,6 +443,9 @@ public class ThreadPool {
      * Grow the size of the pool back up to the initial size, if we can.
      */
     public synchronized void grow() {
+        if(concurrencyLimit != null) {
+            return;
+        }
         int size = getPoolSize();
         if(size < initialPoolSize) {
             long now = System.currentTimeMillis();
@@ -154,4 +471,20 @@ public class ThreadPool {
         }
     }
 
+    /**
+     * Semaphore whose permits can be taken away without waiting for them
+     * to be released.
+     */
+    private static class AdjustableSemaphore extends Semaphore {
+
+        public AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        public void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
 }
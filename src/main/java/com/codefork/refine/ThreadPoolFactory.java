@@ -1,34 +1,65 @@
 package com.codefork.refine;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Properties;
 
 @Component
 public class ThreadPoolFactory {
 
-    private Map<String, ThreadPool> sharedThreadPools = new HashMap<>();
+    private final Map<String, ThreadPool> sharedThreadPools = new HashMap<>();
+
+    // number of users of each shared pool
+    private final Map<ThreadPool, Integer> refCounts = new IdentityHashMap<>();
+
+    private boolean useVirtualThreads = false;
+
+    // null unless fair queuing is enabled
+    private Map<String, Integer> fairQueueWeights;
+
+    @Autowired
+    public ThreadPoolFactory(Config config) {
+        Properties props = config.getProperties();
+        useVirtualThreads = Boolean.valueOf(props.getProperty(Config.PROP_THREADPOOL_VIRTUAL));
+        if(Boolean.valueOf(props.getProperty(Config.PROP_THREADPOOL_FAIR))) {
+            fairQueueWeights = new HashMap<>();
+            String prefix = Config.PROP_THREADPOOL_FAIR_WEIGHT + ".";
+            for(String key : props.stringPropertyNames()) {
+                if(key.startsWith(prefix)) {
+                    fairQueueWeights.put(key.substring(prefix.length()), Integer.valueOf(props.getProperty(key)));
+                }
+            }
+        }
+    }
 
     public ThreadPool createThreadPool() {
-        return new ThreadPool();
+        return new ThreadPool(ThreadPool.INITIAL_POOL_SIZE, useVirtualThreads, fairQueueWeights);
     }
 
-    public ThreadPool getSharedThreadPool(String key) {
-        if(!sharedThreadPools.containsKey(key)) {
-            sharedThreadPools.put(key, new ThreadPool());
-        }
-        return sharedThreadPools.get(key);
+    /**
+     * Returns the pool shared under key, creating it if necessary. Each call
+     * should be matched by a call to releaseThreadPool(); the pool is shut
+     * down when the last user releases it.
+     */
+    public synchronized ThreadPool getSharedThreadPool(String key) {
+        ThreadPool pool = sharedThreadPools.computeIfAbsent(key, k -> createThreadPool());
+        refCounts.merge(pool, 1, Integer::sum);
+        return pool;
     }
 
-    public void releaseThreadPool(ThreadPool pool) {
-        for(ThreadPool p: sharedThreadPools.values()) {
-            if(p.equals(pool)) {
-                // we never shut down shared thread pools.
-                // TODO: keep a count of how many things use
-                // a shared thread pool and release when 0.
-                return;
-            }
+    public synchronized void releaseThreadPool(ThreadPool pool) {
+        Integer count = refCounts.get(pool);
+        if(count != null && count > 1) {
+            refCounts.put(pool, count - 1);
+            return;
+        }
+        if(count != null) {
+            refCounts.remove(pool);
+            sharedThreadPools.values().remove(pool);
         }
         pool.shutdown();
     }
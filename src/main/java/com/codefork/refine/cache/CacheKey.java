@@ -0,0 +1,59 @@
+package com.codefork.refine.cache;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fixed-size (128-bit) cache key, so entries don't have to hold on to
+ * the full text of the queries they're for.
+ *
+ * This is an MD5 digest; it's not used for anything security related,
+ * only to make collisions between distinct queries vanishingly unlikely.
+ */
+public final class CacheKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long high;
+    private final long low;
+
+    public CacheKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static CacheKey of(String s) {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to support MD5
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer digest = ByteBuffer.wrap(md5.digest(s.getBytes(StandardCharsets.UTF_8)));
+        return new CacheKey(digest.getLong(), digest.getLong());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(obj instanceof CacheKey) {
+            CacheKey other = (CacheKey) obj;
+            return high == other.high && low == other.low;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+}
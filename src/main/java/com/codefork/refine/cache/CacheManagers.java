@@ -0,0 +1,30 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.Config;
+import org.springframework.cache.CacheManager;
+
+import java.util.Properties;
+
+/**
+ * Creates the application's CacheManager from configuration properties.
+ */
+public class CacheManagers {
+
+    public static final String PROVIDER_EHCACHE = "ehcache";
+    public static final String PROVIDER_CAFFEINE = "caffeine";
+
+    /**
+     * @param cacheName name of the single cache to set up
+     * @param props application properties, see Config.PROP_CACHE_* for keys
+     */
+    public static CacheManager create(String cacheName, Properties props) {
+        String provider = props.getProperty(Config.PROP_CACHE_PROVIDER, PROVIDER_EHCACHE);
+        if(PROVIDER_CAFFEINE.equalsIgnoreCase(provider)) {
+            return new WeightedCaffeineCacheManager(cacheName, props);
+        } else if(PROVIDER_EHCACHE.equalsIgnoreCase(provider)) {
+            return new EhcacheCacheManager(cacheName, props);
+        }
+        throw new IllegalArgumentException("Unknown cache provider: " + provider);
+    }
+
+}
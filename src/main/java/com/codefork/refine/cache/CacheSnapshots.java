@@ -0,0 +1,314 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.Application;
+import com.codefork.refine.Config;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.concurrency.ClientContext;
+import com.codefork.refine.datasource.CachedResults;
+import com.codefork.refine.datasource.DataSource;
+import com.codefork.refine.resources.CacheSnapshotResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves the contents of the default cache to a file, and loads them
+ * back in, so that a newly started node doesn't have to refill its cache
+ * from the upstream services.
+ *
+ * A snapshot is a gzipped stream of serialized key/value pairs, written
+ * and read one entry at a time, so the whole cache is never held in
+ * memory twice.
+ *
+ * At startup, this can also replay a file of queries against the data
+ * sources. Each line is a data source name (as in /reconcile/NAME), a tab,
+ * and a query as OpenRefine sends it, e.g.
+ *
+ * viaf	{"query":"Shakespeare, William","type":"/people/person"}
+ *
+ * Both run before the application reports that it's ready.
+ */
+@Component
+public class CacheSnapshots implements ApplicationRunner, DisposableBean {
+
+    private static final String MAGIC = "conciliator-cache-snapshot/1";
+
+    // searches made while warming up are queued fairly against real users' searches
+    private static final ClientContext WARMUP_CONTEXT = new ClientContext("cache-warmup", false);
+
+    private static final int WARMUP_BATCH_SIZE = 10;
+
+    private final Log log = LogFactory.getLog(CacheSnapshots.class);
+
+    private final CacheManager cacheManager;
+    private final Map<String, DataSource> dataSources;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final File snapshotFile;
+    private final long snapshotIntervalSecs;
+    private final boolean loadAtStartup;
+    private final String warmupQueriesFile;
+    private final long warmupTimeoutMs;
+    private final long cacheTtlMs;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public CacheSnapshots(Config config, CacheManager cacheManager, Map<String, DataSource> dataSources) {
+        this.cacheManager = cacheManager;
+        this.dataSources = dataSources;
+
+        Properties props = config.getProperties();
+        this.snapshotFile = new File(props.getProperty(Config.PROP_CACHE_SNAPSHOT_FILE, "cache-snapshot.gz"));
+        this.snapshotIntervalSecs = Long.parseLong(props.getProperty(Config.PROP_CACHE_SNAPSHOT_INTERVAL, "0"));
+        this.loadAtStartup = Boolean.parseBoolean(props.getProperty(Config.PROP_CACHE_SNAPSHOT_LOAD, "false"));
+        this.warmupQueriesFile = props.getProperty(Config.PROP_CACHE_WARMUP_QUERIES);
+        this.warmupTimeoutMs = Long.parseLong(props.getProperty(Config.PROP_CACHE_WARMUP_TIMEOUT, "300")) * 1000;
+        this.cacheTtlMs = Long.parseLong(props.getProperty(Config.PROP_CACHE_TTL, "3600")) * 1000;
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if(loadAtStartup) {
+            if(snapshotFile.exists()) {
+                try {
+                    load(snapshotFile);
+                } catch (IOException e) {
+                    log.error("Couldn't load cache snapshot " + snapshotFile + ": " + e);
+                }
+            } else {
+                log.info("No cache snapshot to load at " + snapshotFile);
+            }
+        }
+
+        if(warmupQueriesFile != null && warmupQueriesFile.length() > 0) {
+            try {
+                replay(new File(warmupQueriesFile));
+            } catch (IOException e) {
+                log.error("Couldn't replay warm-up queries from " + warmupQueriesFile + ": " + e);
+            }
+        }
+
+        if(snapshotIntervalSecs > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cache-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    save(snapshotFile);
+                } catch (Exception e) {
+                    log.error("Couldn't save cache snapshot " + snapshotFile + ": " + e);
+                }
+            }, snapshotIntervalSecs, snapshotIntervalSecs, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if(scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the contents of the default cache to file, replacing it only
+     * once the new snapshot is complete. Cached errors aren't saved, since
+     * they're only meant to last a short while.
+     */
+    public synchronized CacheSnapshotResult save(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        Cache cache = cacheManager.getCache(Application.CACHE_DEFAULT);
+
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        long count = 0;
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()))))) {
+            out.writeUTF(MAGIC);
+            Iterator<Map.Entry<Object, Object>> entries = iterate(cache);
+            while(entries.hasNext()) {
+                Map.Entry<Object, Object> entry = entries.next();
+                Object value = entry.getValue();
+                if(!(entry.getKey() instanceof Serializable) || !(value instanceof Serializable)
+                        || (value instanceof CachedResults && ((CachedResults) value).isError())) {
+                    continue;
+                }
+                out.writeObject(entry.getKey());
+                out.writeObject(value);
+                // don't let the stream hold on to every object it's written
+                out.reset();
+                count++;
+            }
+            out.writeObject(null);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        CacheSnapshotResult result = new CacheSnapshotResult(file.getPath(), count, file.length(), System.currentTimeMillis() - start);
+        log.info(String.format("Saved %d cache entries to %s (%d bytes) in %dms",
+                result.getEntries(), result.getFile(), result.getBytes(), result.getElapsedMs()));
+        return result;
+    }
+
+    /**
+     * Puts the entries in a snapshot into the default cache, skipping
+     * results that would have expired by now. The rest only stay cached
+     * for what's left of their TTL (see TimeToLive), so e.g. empty results
+     * don't get a fresh lease on life from every restart, while results
+     * kept past the TTL for revalidation still are.
+     */
+    public CacheSnapshotResult load(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        Cache cache = cacheManager.getCache(Application.CACHE_DEFAULT);
+
+        long count = 0;
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath()))))) {
+            if(!MAGIC.equals(in.readUTF())) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            Object key;
+            while((key = in.readObject()) != null) {
+                Object value = in.readObject();
+                if(TimeToLive.remainingMillis(value, cacheTtlMs) <= 0) {
+                    continue;
+                }
+                cache.put(key, value);
+                count++;
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Snapshot is from an incompatible version: " + e, e);
+        } catch (EOFException e) {
+            log.warn("Cache snapshot was truncated, loaded what was there: " + file);
+        }
+
+        CacheSnapshotResult result = new CacheSnapshotResult(file.getPath(), count, file.length(), System.currentTimeMillis() - start);
+        log.info(String.format("Loaded %d cache entries from %s in %dms",
+                result.getEntries(), result.getFile(), result.getElapsedMs()));
+        return result;
+    }
+
+    /**
+     * Runs the queries in file (see class comment for the format) in small
+     * batches, as a separate, non-interactive client, until they're done or
+     * the warm-up timeout passes.
+     *
+     * @return number of queries run
+     */
+    public long replay(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        long count = 0;
+
+        ClientContext previousContext = ClientContext.current();
+        ClientContext.set(WARMUP_CONTEXT);
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            DataSource batchDataSource = null;
+            Map<String, SearchQuery> batch = new HashMap<>();
+            while((line = reader.readLine()) != null) {
+                if(System.currentTimeMillis() - start > warmupTimeoutMs) {
+                    log.info("Warm-up timed out, skipping the rest of the queries in " + file);
+                    break;
+                }
+                line = line.trim();
+                if(line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t", 2);
+                DataSource dataSource = parts.length == 2 ? dataSources.get(parts[0]) : null;
+                if(dataSource == null) {
+                    log.warn("Skipping warm-up query for unknown data source: " + line);
+                    continue;
+                }
+
+                if(dataSource != batchDataSource || batch.size() == WARMUP_BATCH_SIZE) {
+                    runBatch(batchDataSource, batch);
+                    batchDataSource = dataSource;
+                }
+                batch.put("q" + batch.size(), dataSource.getSearchQueryFactory().createSearchQuery(mapper.readTree(parts[1])));
+                count++;
+            }
+            runBatch(batchDataSource, batch);
+        } finally {
+            ClientContext.set(previousContext);
+        }
+
+        log.info(String.format("Replayed %d warm-up queries from %s in %dms",
+                count, file, System.currentTimeMillis() - start));
+        return count;
+    }
+
+    private void runBatch(DataSource dataSource, Map<String, SearchQuery> batch) {
+        if(dataSource != null && batch.size() > 0) {
+            try {
+                dataSource.searchAsync(batch).join();
+            } catch (RuntimeException e) {
+                log.warn("Error running warm-up queries: " + e);
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * The Spring cache abstraction doesn't support iterating, so this
+     * goes to the underlying caches.
+     */
+    @SuppressWarnings("unchecked")
+    private static Iterator<Map.Entry<Object, Object>> iterate(Cache cache) {
+        Object nativeCache = cache.getNativeCache();
+        if(nativeCache instanceof org.ehcache.Cache) {
+            Iterator<org.ehcache.Cache.Entry<Object, Object>> entries =
+                    ((org.ehcache.Cache<Object, Object>) nativeCache).iterator();
+            return new Iterator<Map.Entry<Object, Object>>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Map.Entry<Object, Object> next() {
+                    org.ehcache.Cache.Entry<Object, Object> entry = entries.next();
+                    return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue());
+                }
+            };
+        } else if(nativeCache instanceof com.github.benmanes.caffeine.cache.Cache) {
+            return ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) nativeCache).asMap().entrySet().iterator();
+        }
+        throw new IllegalStateException("Can't iterate over cache of type " + nativeCache.getClass().getName());
+    }
+
+}
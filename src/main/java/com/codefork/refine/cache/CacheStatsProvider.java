@@ -0,0 +1,17 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.resources.StatsCache;
+
+import java.util.List;
+
+/**
+ * Implemented by cache managers that can report on their caches for /stats.
+ */
+public interface CacheStatsProvider {
+
+    /**
+     * @return hit rates and sizes for each cache
+     */
+    List<StatsCache> getStats();
+
+}
@@ -0,0 +1,73 @@
+package com.codefork.refine.cache;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+
+/**
+ * Spring Cache backed directly by an Ehcache 3 cache, rather than through
+ * JSR-107, so that we can use its tiers and statistics.
+ *
+ * Keys and values must be Serializable, since they may be stored
+ * off-heap or on disk.
+ */
+public class EhcacheCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final org.ehcache.Cache<Serializable, Serializable> cache;
+
+    public EhcacheCache(String name, org.ehcache.Cache<Serializable, Serializable> cache) {
+        super(true);
+        this.name = name;
+        this.cache = cache;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public org.ehcache.Cache<Serializable, Serializable> getNativeCache() {
+        return cache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        return cache.get((Serializable) key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper value = get(key);
+        if(value != null) {
+            return (T) value.get();
+        }
+        T loaded;
+        try {
+            loaded = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, loaded);
+        return loaded;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        cache.put((Serializable) key, (Serializable) toStoreValue(value));
+    }
+
+    @Override
+    public void evict(Object key) {
+        cache.remove((Serializable) key);
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+}
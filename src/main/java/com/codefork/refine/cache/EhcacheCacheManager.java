@@ -0,0 +1,187 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.Config;
+import com.codefork.refine.MemSize;
+import com.codefork.refine.resources.StatsCache;
+import com.codefork.refine.resources.StatsCacheTier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.core.internal.statistics.DefaultStatisticsService;
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.TierStatistics;
+import org.ehcache.expiry.ExpiryPolicy;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+
+import java.io.File;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Holds the main Ehcache cache, with up to three tiers: heap, off-heap,
+ * and a persistent disk tier. Heap is always used; the other two are
+ * only set up when their sizes are configured. Smaller, heap-only caches
+ * can be added with addHeapCache().
+ *
+ * Each tier must be larger than the one before it. Entries in the disk
+ * tier survive restarts, as long as the application is shut down cleanly.
+ */
+public class EhcacheCacheManager extends AbstractCacheManager implements DisposableBean, CacheStatsProvider, HeapCacheFactory {
+
+    private final Log log = LogFactory.getLog(EhcacheCacheManager.class);
+
+    private final List<String> cacheNames = new ArrayList<>();
+    private final DefaultStatisticsService statisticsService = new DefaultStatisticsService();
+    private final org.ehcache.CacheManager cacheManager;
+
+    /**
+     * @param props application properties, see Config.PROP_CACHE_* for keys
+     */
+    public EhcacheCacheManager(String cacheName, Properties props) {
+        cacheNames.add(cacheName);
+
+        long ttl = Long.parseLong(props.getProperty(Config.PROP_CACHE_TTL));
+        MemSize heapSize = MemSize.valueOf(props.getProperty(Config.PROP_CACHE_SIZE));
+        MemSize offHeapSize = MemSize.valueOf(props.getProperty(Config.PROP_CACHE_OFFHEAP_SIZE));
+        MemSize diskSize = MemSize.valueOf(props.getProperty(Config.PROP_CACHE_DISK_SIZE));
+        String diskDir = props.getProperty(Config.PROP_CACHE_DISK_DIR);
+
+        log.info(String.format("Initializing cache TTL=%d secs, heap=%s, offheap=%s, disk=%s",
+                ttl, heapSize, offHeapSize, diskSize.getSize() > 0 ? diskSize + " in " + diskDir : diskSize));
+
+        ResourcePoolsBuilder pools = ResourcePoolsBuilder.newResourcePoolsBuilder()
+                .heap(heapSize.getSize(), heapSize.getUnit());
+        if(offHeapSize.getSize() > 0) {
+            pools = pools.offheap(offHeapSize.getSize(), offHeapSize.getUnit());
+        }
+        if(diskSize.getSize() > 0) {
+            pools = pools.disk(diskSize.getSize(), diskSize.getUnit(), true);
+        }
+
+        CacheManagerBuilder<org.ehcache.CacheManager> inMemory = CacheManagerBuilder.newCacheManagerBuilder()
+                .using(statisticsService);
+        CacheManagerBuilder<? extends org.ehcache.CacheManager> builder = diskSize.getSize() > 0
+                ? inMemory.with(CacheManagerBuilder.persistence(new File(diskDir)))
+                : inMemory;
+        cacheManager = builder
+                .withCache(cacheName, CacheConfigurationBuilder
+                        .newCacheConfigurationBuilder(Serializable.class, Serializable.class, pools)
+                        .withExpiry(new EntryExpiryPolicy(Duration.ofSeconds(ttl))))
+                .build(true);
+    }
+
+    /**
+     * Adds a smaller cache that's only kept on the heap. This needs to be
+     * called before the cache manager is initialized.
+     */
+    @Override
+    public void addHeapCache(String name, long ttl, MemSize size) {
+        log.info(String.format("Initializing cache %s TTL=%d secs, heap=%s", name, ttl, size));
+
+        cacheManager.createCache(name, CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Serializable.class, Serializable.class,
+                        ResourcePoolsBuilder.newResourcePoolsBuilder().heap(size.getSize(), size.getUnit()))
+                .withExpiry(new EntryExpiryPolicy(Duration.ofSeconds(ttl))));
+        cacheNames.add(name);
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        List<Cache> caches = new ArrayList<>();
+        for(String cacheName : cacheNames) {
+            caches.add(new EhcacheCache(cacheName,
+                    cacheManager.getCache(cacheName, Serializable.class, Serializable.class)));
+        }
+        return caches;
+    }
+
+    /**
+     * @return hit rates for each cache overall, and sizes of each of its tiers
+     */
+    @Override
+    public List<StatsCache> getStats() {
+        List<StatsCache> statsList = new ArrayList<>();
+        for(String cacheName : cacheNames) {
+            statsList.add(getStats(cacheName));
+        }
+        return statsList;
+    }
+
+    private StatsCache getStats(String cacheName) {
+        CacheStatistics cacheStatistics = statisticsService.getCacheStatistics(cacheName);
+
+        StatsCache stats = new StatsCache();
+        stats.setName(cacheName);
+        stats.setHits(cacheStatistics.getCacheHits());
+        stats.setMisses(cacheStatistics.getCacheMisses());
+        stats.setHitPercentage(cacheStatistics.getCacheHitPercentage());
+        stats.setPuts(cacheStatistics.getCachePuts());
+        stats.setEvictions(cacheStatistics.getCacheEvictions());
+        stats.setExpirations(cacheStatistics.getCacheExpirations());
+
+        List<StatsCacheTier> tiers = new ArrayList<>();
+        for(Map.Entry<String, TierStatistics> entry : cacheStatistics.getTierStatistics().entrySet()) {
+            TierStatistics tierStatistics = entry.getValue();
+            StatsCacheTier tier = new StatsCacheTier();
+            tier.setName(entry.getKey());
+            tier.setMappings(tierStatistics.getMappings());
+            tier.setOccupiedBytes(tierStatistics.getOccupiedByteSize());
+            tier.setAllocatedBytes(tierStatistics.getAllocatedByteSize());
+            tier.setHits(tierStatistics.getHits());
+            tier.setMisses(tierStatistics.getMisses());
+            tier.setEvictions(tierStatistics.getEvictions());
+            tiers.add(tier);
+        }
+        stats.setTiers(tiers);
+
+        return stats;
+    }
+
+    /**
+     * Closing the cache manager is what flushes the disk tier so it can
+     * be reloaded next time.
+     */
+    @Override
+    public void destroy() {
+        cacheManager.close();
+    }
+
+    /**
+     * Expires entries after the cache's TTL, unless they specify their own.
+     */
+    private static class EntryExpiryPolicy implements ExpiryPolicy<Serializable, Serializable> {
+
+        private final Duration defaultTtl;
+
+        EntryExpiryPolicy(Duration defaultTtl) {
+            this.defaultTtl = defaultTtl;
+        }
+
+        @Override
+        public Duration getExpiryForCreation(Serializable key, Serializable value) {
+            return TimeToLive.forValue(value, defaultTtl);
+        }
+
+        @Override
+        public Duration getExpiryForAccess(Serializable key, Supplier<? extends Serializable> value) {
+            // unchanged
+            return null;
+        }
+
+        @Override
+        public Duration getExpiryForUpdate(Serializable key, Supplier<? extends Serializable> oldValue, Serializable newValue) {
+            return TimeToLive.forValue(newValue, defaultTtl);
+        }
+    }
+
+}
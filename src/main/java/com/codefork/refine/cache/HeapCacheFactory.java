@@ -0,0 +1,18 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.MemSize;
+
+/**
+ * Implemented by cache managers that can hold caches besides the main one,
+ * each with its own TTL and size, for data that shouldn't compete with
+ * search results for space.
+ */
+public interface HeapCacheFactory {
+
+    /**
+     * Adds a cache that's kept on the heap only.
+     * @param ttl time to live, in seconds
+     */
+    void addHeapCache(String name, long ttl, MemSize size);
+
+}
@@ -0,0 +1,234 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes lists of results into compact byte arrays for the cache,
+ * which take up a fraction of the heap that the Result objects do.
+ *
+ * The format is: a header byte saying whether the rest is deflated
+ * (with the uncompressed length following, if so); a dictionary of the
+ * distinct NameTypes; then each result as its id, name, indexes into the
+ * dictionary, score and match flag. Counts and lengths are varints, and
+ * strings are UTF-8. Lists that encode to more than COMPRESS_THRESHOLD
+ * bytes are deflated, if that makes them smaller.
+ */
+public final class ResultListCodec {
+
+    public static final int COMPRESS_THRESHOLD = 1024;
+
+    private static final byte FORMAT_RAW = 0;
+    private static final byte FORMAT_DEFLATE = 1;
+
+    private static final int FLAG_MATCH = 1;
+    private static final int FLAG_NULL_TYPE = 2;
+
+    private ResultListCodec() {
+    }
+
+    public static byte[] encode(List<Result> results) {
+        Map<NameType, Integer> dictionary = new HashMap<>();
+        List<NameType> nameTypes = new ArrayList<>();
+        for(Result result : results) {
+            if(result.getType() != null) {
+                for(NameType nameType : result.getType()) {
+                    if(!dictionary.containsKey(nameType)) {
+                        dictionary.put(nameType, nameTypes.size());
+                        nameTypes.add(nameType);
+                    }
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, nameTypes.size());
+        for(NameType nameType : nameTypes) {
+            writeString(out, nameType.getId());
+            writeString(out, nameType.getName());
+        }
+        writeVarint(out, results.size());
+        for(Result result : results) {
+            writeString(out, result.getId());
+            writeString(out, result.getName());
+            int flags = (result.isMatch() ? FLAG_MATCH : 0) | (result.getType() == null ? FLAG_NULL_TYPE : 0);
+            out.write(flags);
+            if(result.getType() != null) {
+                writeVarint(out, result.getType().size());
+                for(NameType nameType : result.getType()) {
+                    writeVarint(out, dictionary.get(nameType));
+                }
+            }
+            long score = Double.doubleToLongBits(result.getScore());
+            for(int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (score >>> shift));
+            }
+        }
+        byte[] raw = out.toByteArray();
+
+        if(raw.length > COMPRESS_THRESHOLD) {
+            byte[] deflated = deflate(raw);
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            header.write(FORMAT_DEFLATE);
+            writeVarint(header, raw.length);
+            if(header.size() + deflated.length < raw.length) {
+                header.write(deflated, 0, deflated.length);
+                return header.toByteArray();
+            }
+        }
+        byte[] encoded = new byte[raw.length + 1];
+        encoded[0] = FORMAT_RAW;
+        System.arraycopy(raw, 0, encoded, 1, raw.length);
+        return encoded;
+    }
+
+    public static List<Result> decode(byte[] encoded) {
+        Reader in = new Reader(encoded, 1);
+        if(encoded[0] == FORMAT_DEFLATE) {
+            int length = in.readVarint();
+            in = new Reader(inflate(encoded, in.pos, length), 0);
+        } else if(encoded[0] != FORMAT_RAW) {
+            throw new IllegalArgumentException("Unknown encoding: " + encoded[0]);
+        }
+
+        int nameTypeCount = in.readVarint();
+        List<NameType> nameTypes = new ArrayList<>(nameTypeCount);
+        for(int i = 0; i < nameTypeCount; i++) {
+            nameTypes.add(new NameType(in.readString(), in.readString()));
+        }
+        int count = in.readVarint();
+        List<Result> results = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            Result result = new Result();
+            result.setId(in.readString());
+            result.setName(in.readString());
+            int flags = in.readByte();
+            result.setMatch((flags & FLAG_MATCH) != 0);
+            if((flags & FLAG_NULL_TYPE) == 0) {
+                int typeCount = in.readVarint();
+                List<NameType> type = new ArrayList<>(typeCount);
+                for(int j = 0; j < typeCount; j++) {
+                    type.add(nameTypes.get(in.readVarint()));
+                }
+                result.setType(type);
+            }
+            long score = 0;
+            for(int j = 0; j < 8; j++) {
+                score = (score << 8) | in.readByte();
+            }
+            result.setScore(Double.longBitsToDouble(score));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Strings are written as their length plus one, so that 0 can mean null.
+     */
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        if(s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+            byte[] buf = new byte[4096];
+            while(!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] encoded, int offset, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(encoded, offset, encoded.length - offset);
+            byte[] raw = new byte[length];
+            int n = 0;
+            while(n < length && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, length - n);
+                if(read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                n += read;
+            }
+            if(n != length) {
+                throw new IllegalArgumentException("Truncated result list");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt result list", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static class Reader {
+
+        private final byte[] bytes;
+        private int pos;
+
+        Reader(byte[] bytes, int pos) {
+            this.bytes = bytes;
+            this.pos = pos;
+        }
+
+        int readByte() {
+            return bytes[pos++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() {
+            int length = readVarint();
+            if(length == 0) {
+                return null;
+            }
+            String s = new String(bytes, pos, length - 1, StandardCharsets.UTF_8);
+            pos += length - 1;
+            return s;
+        }
+    }
+
+}
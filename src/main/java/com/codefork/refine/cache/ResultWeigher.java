@@ -0,0 +1,95 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.datasource.CachedResults;
+import com.codefork.refine.datasource.Validators;
+import com.codefork.refine.orcid.OrcidRecord;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import com.codefork.refine.viaf.CachedClusters;
+import com.codefork.refine.viaf.NameEntry;
+import com.codefork.refine.viaf.NameSource;
+import com.codefork.refine.viaf.VIAFResult;
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.util.List;
+
+/**
+ * Estimates how many bytes a cached list of results (or of VIAF clusters,
+ * or an ORCID record) takes up, from the number of items and the lengths of their strings, without
+ * walking the object graph the way Ehcache's heap sizing does.
+ *
+ * This doesn't need to be exact, only proportional, so that the cache
+ * holds about as much as its configured size.
+ */
+public class ResultWeigher implements Weigher<Object, Object> {
+
+    // rough overhead of an object header plus its references and primitives
+    private static final int OBJECT_OVERHEAD = 32;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int ARRAY_OVERHEAD = 16;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long weight = weighObject(key) + weighObject(value);
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    private static long weighObject(Object obj) {
+        if(obj instanceof String) {
+            return weighString((String) obj);
+        } else if(obj instanceof CachedResults) {
+            CachedResults cached = (CachedResults) obj;
+            return OBJECT_OVERHEAD + weighString(cached.getQuery()) + ARRAY_OVERHEAD + cached.getEncodedSize()
+                    + weighValidators(cached.getValidators());
+        } else if(obj instanceof OrcidRecord) {
+            OrcidRecord record = (OrcidRecord) obj;
+            return OBJECT_OVERHEAD
+                    + weighString(record.getId())
+                    + weighString(record.getName())
+                    + weighValidators(record.getValidators());
+        } else if(obj instanceof CachedClusters) {
+            return OBJECT_OVERHEAD + weighObject(((CachedClusters) obj).getClusters());
+        } else if(obj instanceof VIAFResult) {
+            VIAFResult viafResult = (VIAFResult) obj;
+            return OBJECT_OVERHEAD + weighString(viafResult.getViafId()) + weighObject(viafResult.getNameEntries());
+        } else if(obj instanceof NameEntry) {
+            NameEntry nameEntry = (NameEntry) obj;
+            return OBJECT_OVERHEAD + weighString(nameEntry.getName()) + weighObject(nameEntry.getNameSources());
+        } else if(obj instanceof NameSource) {
+            NameSource nameSource = (NameSource) obj;
+            return OBJECT_OVERHEAD
+                    + weighString(nameSource.getSource())
+                    + weighString(nameSource.getNameId())
+                    + weighString(nameSource.getSourceNameId());
+        } else if(obj instanceof List) {
+            long weight = OBJECT_OVERHEAD;
+            for(Object item : (List<?>) obj) {
+                weight += weighObject(item);
+            }
+            return weight;
+        } else if(obj instanceof Result) {
+            Result result = (Result) obj;
+            return OBJECT_OVERHEAD
+                    + weighString(result.getId())
+                    + weighString(result.getName())
+                    + weighObject(result.getType());
+        } else if(obj instanceof NameType) {
+            NameType nameType = (NameType) obj;
+            return OBJECT_OVERHEAD
+                    + weighString(nameType.getId())
+                    + weighString(nameType.getName());
+        }
+        return OBJECT_OVERHEAD;
+    }
+
+    private static long weighValidators(Validators validators) {
+        return validators != null
+                ? OBJECT_OVERHEAD + weighString(validators.getEtag()) + weighString(validators.getLastModified())
+                : 0;
+    }
+
+    private static long weighString(String s) {
+        return s != null ? STRING_OVERHEAD + s.length() : 0;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.codefork.refine.cache;
+
+import java.time.Duration;
+
+/**
+ * Implemented by cached values that should expire sooner (or later)
+ * than the cache's configured TTL, or that may already be part way through
+ * their lifetime when they're put in the cache (e.g. loaded from a snapshot).
+ */
+public interface TimeToLive {
+
+    /**
+     * @return how long the value should stay cached, in ms,
+     * or 0 to use the cache's TTL
+     */
+    long getTimeToLiveMs();
+
+    /**
+     * @return ms since the value was first stored
+     */
+    long getAgeMillis();
+
+    /**
+     * @return how much longer value should stay cached, in ms; 0 or less
+     * if it's already past its TTL
+     */
+    static long remainingMillis(Object value, long defaultTtlMs) {
+        if(value instanceof TimeToLive) {
+            TimeToLive timeToLive = (TimeToLive) value;
+            long ttlMs = timeToLive.getTimeToLiveMs() > 0 ? timeToLive.getTimeToLiveMs() : defaultTtlMs;
+            return ttlMs - Math.max(0, timeToLive.getAgeMillis());
+        }
+        return defaultTtlMs;
+    }
+
+    /**
+     * @return how much longer value should stay cached
+     */
+    static Duration forValue(Object value, Duration defaultTtl) {
+        return Duration.ofMillis(Math.max(0, remainingMillis(value, defaultTtl.toMillis())));
+    }
+
+}
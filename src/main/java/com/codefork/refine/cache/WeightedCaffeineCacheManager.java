@@ -0,0 +1,128 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.Config;
+import com.codefork.refine.MemSize;
+import com.codefork.refine.resources.StatsCache;
+import com.codefork.refine.resources.StatsCacheTier;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * In-heap cache bounded by the estimated size of its entries (see
+ * ResultWeigher) rather than by measuring them.
+ *
+ * Caffeine admits and evicts entries using W-TinyLFU: a new entry only
+ * displaces an existing one if it's been asked for more often recently,
+ * so a burst of one-off queries can't push out the ones that come up
+ * every day.
+ */
+public class WeightedCaffeineCacheManager extends CaffeineCacheManager implements CacheStatsProvider, HeapCacheFactory {
+
+    private final Log log = LogFactory.getLog(WeightedCaffeineCacheManager.class);
+
+    /**
+     * @param props application properties; uses Config.PROP_CACHE_TTL
+     *              and Config.PROP_CACHE_SIZE
+     */
+    public WeightedCaffeineCacheManager(String cacheName, Properties props) {
+        long ttl = Long.parseLong(props.getProperty(Config.PROP_CACHE_TTL));
+        MemSize size = MemSize.valueOf(props.getProperty(Config.PROP_CACHE_SIZE));
+
+        log.info(String.format("Initializing Caffeine cache TTL=%d secs, size=%s", ttl, size));
+
+        setCaffeine(Caffeine.newBuilder()
+                .maximumWeight(size.getUnit().toBytes(size.getSize()))
+                .weigher(new ResultWeigher())
+                .expireAfter(new EntryExpiry(Duration.ofSeconds(ttl)))
+                .recordStats());
+        setCacheNames(Collections.singletonList(cacheName));
+    }
+
+    @Override
+    public void addHeapCache(String name, long ttl, MemSize size) {
+        log.info(String.format("Initializing Caffeine cache %s TTL=%d secs, size=%s", name, ttl, size));
+
+        registerCustomCache(name, Caffeine.newBuilder()
+                .maximumWeight(size.getUnit().toBytes(size.getSize()))
+                .weigher(new ResultWeigher())
+                .expireAfter(new EntryExpiry(Duration.ofSeconds(ttl)))
+                .recordStats()
+                .build());
+    }
+
+    @Override
+    public List<StatsCache> getStats() {
+        List<StatsCache> statsList = new ArrayList<>();
+        for(String name : getCacheNames()) {
+            com.github.benmanes.caffeine.cache.Cache<Object, Object> cache =
+                    ((CaffeineCache) getCache(name)).getNativeCache();
+            // apply pending writes, which Caffeine does asynchronously, so sizes are current
+            cache.cleanUp();
+            CacheStats cacheStats = cache.stats();
+
+            StatsCache stats = new StatsCache();
+            stats.setName(name);
+            stats.setHits(cacheStats.hitCount());
+            stats.setMisses(cacheStats.missCount());
+            stats.setHitPercentage((float) (cacheStats.hitRate() * 100));
+            stats.setEvictions(cacheStats.evictionCount());
+
+            StatsCacheTier tier = new StatsCacheTier();
+            tier.setName("OnHeap");
+            tier.setMappings(cache.estimatedSize());
+            tier.setHits(cacheStats.hitCount());
+            tier.setMisses(cacheStats.missCount());
+            tier.setEvictions(cacheStats.evictionCount());
+            Optional<Policy.Eviction<Object, Object>> eviction = cache.policy().eviction();
+            if(eviction.isPresent()) {
+                tier.setOccupiedBytes(eviction.get().weightedSize().orElse(0));
+                tier.setAllocatedBytes(eviction.get().getMaximum());
+            }
+            stats.setTiers(Collections.singletonList(tier));
+
+            statsList.add(stats);
+        }
+        return statsList;
+    }
+
+    /**
+     * Expires entries after the cache's TTL, unless they specify their own.
+     */
+    private static class EntryExpiry implements Expiry<Object, Object> {
+
+        private final Duration defaultTtl;
+
+        EntryExpiry(Duration defaultTtl) {
+            this.defaultTtl = defaultTtl;
+        }
+
+        @Override
+        public long expireAfterCreate(Object key, Object value, long currentTime) {
+            return TimeToLive.forValue(value, defaultTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+            return TimeToLive.forValue(value, defaultTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.codefork.refine.concurrency;
+
+/**
+ * Additive increase, multiplicative decrease: like a TCP congestion window,
+ * the limit grows by one for every limit's worth of successful requests
+ * made while the limit was actually being used, and is cut by backoffRatio
+ * whenever a request is dropped or takes longer than the timeout.
+ */
+public class AIMDLimit implements ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+
+    private double limit;
+
+    public AIMDLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long timeoutNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = timeoutNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if(dropped || rttNanos > timeoutNanos) {
+            limit = Math.max(minLimit, Math.floor(limit * backoffRatio));
+        } else if(inFlight * 2 >= limit) {
+            // only grow if we're using a good part of the limit;
+            // otherwise these samples tell us nothing about capacity
+            limit = Math.min(maxLimit, limit + 1.0 / Math.floor(limit));
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.codefork.refine.concurrency;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to an upstream host that's failing or hanging,
+ * so callers fail right away instead of each waiting for a timeout.
+ *
+ * While CLOSED, the outcomes of the last windowSize requests are kept.
+ * Once there are at least minimumCalls of them, and the percentage that
+ * failed or were slow reaches its threshold, the breaker goes OPEN and
+ * turns every request away. After openMs, it goes HALF_OPEN and lets
+ * halfOpenCalls trial requests through: if they all succeed in good time,
+ * it closes again; if any doesn't, it goes back to OPEN.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Log log = LogFactory.getLog(CircuitBreaker.class);
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    // outcomes of the most recent calls while closed, as a ring
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int calls = 0;
+    private int next = 0;
+    private int failures = 0;
+    private int slowCalls = 0;
+
+    private State state = State.CLOSED;
+    private long stateChangedAtNanos = System.nanoTime();
+    private int trialsStarted = 0;
+    private int trialsSucceeded = 0;
+
+    private long rejected = 0;
+    private long timesOpened = 0;
+
+    /**
+     * @param failureRateThreshold percentage of failed calls at which to open
+     * @param slowCallRateThreshold percentage of slow calls at which to open
+     * @param slowCallMs calls that take at least this long are slow
+     * @param windowSize number of recent calls the rates are taken from
+     * @param minimumCalls don't open until at least this many calls are in the window
+     * @param openMs how long to stay open before trying again
+     * @param halfOpenCalls number of trial calls to let through when half open
+     */
+    public CircuitBreaker(String name, double failureRateThreshold, double slowCallRateThreshold, long slowCallMs,
+                          int windowSize, int minimumCalls, long openMs, int halfOpenCalls) {
+        if(windowSize <= 0 || halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("window size and half-open calls must be positive");
+        }
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.halfOpenCalls = halfOpenCalls;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * @return true if a request can be made now; if so, its outcome should
+     * be reported with onResult() or onCancelled()
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        if(state == State.OPEN && now - stateChangedAtNanos >= openNanos) {
+            transitionTo(State.HALF_OPEN, now);
+        }
+        if(state == State.CLOSED) {
+            return true;
+        }
+        if(state == State.HALF_OPEN) {
+            // trials that never reported back mustn't keep it half open forever
+            if(trialsStarted >= halfOpenCalls && now - stateChangedAtNanos >= openNanos) {
+                transitionTo(State.HALF_OPEN, now);
+            }
+            if(trialsStarted < halfOpenCalls) {
+                trialsStarted++;
+                return true;
+            }
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Reports how a request turned out.
+     * @param failed true if the host didn't answer, or answered with a server error
+     */
+    public synchronized void onResult(long elapsedNanos, boolean failed) {
+        boolean isSlow = elapsedNanos >= slowCallNanos;
+        if(state == State.HALF_OPEN) {
+            if(failed || isSlow) {
+                transitionTo(State.OPEN, System.nanoTime());
+            } else if(++trialsSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED, System.nanoTime());
+            }
+        } else if(state == State.CLOSED) {
+            record(failed, isSlow);
+            if(calls >= minimumCalls
+                    && (getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold)) {
+                transitionTo(State.OPEN, System.nanoTime());
+            }
+        }
+        // results of calls made before the breaker opened don't matter anymore
+    }
+
+    /**
+     * Reports that a request was abandoned before it had an outcome.
+     */
+    public synchronized void onCancelled() {
+        if(state == State.HALF_OPEN && trialsStarted > 0) {
+            trialsStarted--;
+        }
+    }
+
+    private void record(boolean isFailed, boolean isSlow) {
+        if(calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = isFailed;
+        slow[next] = isSlow;
+        failures += isFailed ? 1 : 0;
+        slowCalls += isSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private void transitionTo(State newState, long now) {
+        if(newState != state) {
+            log.warn(String.format("Circuit breaker for %s is now %s (failure rate %.0f%%, slow call rate %.0f%%)",
+                    name, newState, getFailureRate(), getSlowCallRate()));
+        }
+        if(newState == State.OPEN && state != State.OPEN) {
+            timesOpened++;
+        }
+        state = newState;
+        stateChangedAtNanos = now;
+        trialsStarted = 0;
+        trialsSucceeded = 0;
+        if(newState == State.CLOSED) {
+            calls = 0;
+            next = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+
+    public synchronized State getState() {
+        // report OPEN as HALF_OPEN once it would let a trial through
+        if(state == State.OPEN && System.nanoTime() - stateChangedAtNanos >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return percentage of calls in the window that failed
+     */
+    public synchronized double getFailureRate() {
+        return calls > 0 ? 100.0 * failures / calls : 0;
+    }
+
+    /**
+     * @return percentage of calls in the window that were slow
+     */
+    public synchronized double getSlowCallRate() {
+        return calls > 0 ? 100.0 * slowCalls / calls : 0;
+    }
+
+    public synchronized int getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return number of requests turned away
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.codefork.refine.concurrency;
+
+import com.codefork.refine.Config;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Circuit breakers by upstream host, shared by every data source that
+ * talks to it. LiveConnectionFactory checks these before making a
+ * connection.
+ *
+ * Breakers are configured with circuitbreaker.HOST.* properties (see
+ * the *_SUFFIX constants), falling back to circuitbreaker.default.*
+ * and then to the defaults here. circuitbreaker.enabled=false turns
+ * them all off.
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    public static final String PROP_ENABLED = "circuitbreaker.enabled";
+    public static final String PROP_PREFIX = "circuitbreaker.";
+    public static final String FAILURE_RATE_SUFFIX = ".failure.rate";
+    public static final String SLOW_RATE_SUFFIX = ".slow.rate";
+    public static final String SLOW_MS_SUFFIX = ".slow.ms";
+    public static final String WINDOW_SUFFIX = ".window";
+    public static final String MIN_CALLS_SUFFIX = ".min.calls";
+    public static final String OPEN_MS_SUFFIX = ".open.ms";
+    public static final String HALF_OPEN_CALLS_SUFFIX = ".halfopen.calls";
+    public static final String DEFAULT_HOST = "default";
+
+    private final Properties properties;
+    private final boolean enabled;
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CircuitBreakerRegistry(Config config) {
+        this(config.getProperties());
+    }
+
+    public CircuitBreakerRegistry(Properties properties) {
+        this.properties = properties;
+        this.enabled = Boolean.parseBoolean(properties.getProperty(PROP_ENABLED, "true"));
+    }
+
+    /**
+     * @return the breaker for host, or null if breakers are disabled
+     */
+    public CircuitBreaker getBreaker(String host) {
+        if(!enabled || host == null) {
+            return null;
+        }
+        return breakers.computeIfAbsent(host, this::createBreaker);
+    }
+
+    /**
+     * Checks whether a request can be made to host.
+     * @return the host's breaker, which the request's outcome should be
+     * reported to; null if breakers are disabled
+     * @throws CircuitOpenException if the host's breaker is open
+     */
+    public CircuitBreaker acquire(String host) throws CircuitOpenException {
+        CircuitBreaker breaker = getBreaker(host);
+        if(breaker != null && !breaker.tryAcquire()) {
+            throw new CircuitOpenException(host);
+        }
+        return breaker;
+    }
+
+    private CircuitBreaker createBreaker(String host) {
+        return new CircuitBreaker(host,
+                Double.parseDouble(getProperty(host, FAILURE_RATE_SUFFIX, "50")),
+                Double.parseDouble(getProperty(host, SLOW_RATE_SUFFIX, "50")),
+                Long.parseLong(getProperty(host, SLOW_MS_SUFFIX, "10000")),
+                Integer.parseInt(getProperty(host, WINDOW_SUFFIX, "20")),
+                Integer.parseInt(getProperty(host, MIN_CALLS_SUFFIX, "10")),
+                Long.parseLong(getProperty(host, OPEN_MS_SUFFIX, "30000")),
+                Integer.parseInt(getProperty(host, HALF_OPEN_CALLS_SUFFIX, "3")));
+    }
+
+    private String getProperty(String host, String suffix, String defaultValue) {
+        return properties.getProperty(PROP_PREFIX + host + suffix,
+                properties.getProperty(PROP_PREFIX + DEFAULT_HOST + suffix, defaultValue));
+    }
+
+    /**
+     * @return breakers in use, by host
+     */
+    public Map<String, CircuitBreaker> getBreakers() {
+        return Collections.unmodifiableMap(new TreeMap<>(breakers));
+    }
+
+}
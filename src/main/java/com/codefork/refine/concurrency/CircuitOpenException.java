@@ -0,0 +1,21 @@
+package com.codefork.refine.concurrency;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request to a host whose circuit breaker is open.
+ */
+public class CircuitOpenException extends IOException {
+
+    private final String host;
+
+    public CircuitOpenException(String host) {
+        super("Circuit breaker is open for " + host);
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+}
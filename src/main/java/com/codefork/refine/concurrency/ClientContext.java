@@ -0,0 +1,60 @@
+package com.codefork.refine.concurrency;
+
+/**
+ * Identifies who a unit of work is being done for, so that thread pools
+ * can share their threads fairly between clients.
+ *
+ * The context for the current HTTP request is kept in a ThreadLocal,
+ * set by ClientContextFilter; code that hands work off to other threads
+ * should capture it with current() and restore it with set().
+ */
+public final class ClientContext {
+
+    public static final String DEFAULT_CLIENT = "default";
+
+    private static final ThreadLocal<ClientContext> current = new ThreadLocal<>();
+
+    private static final ClientContext DEFAULT = new ClientContext(DEFAULT_CLIENT, false);
+
+    private final String clientId;
+    private final boolean interactive;
+
+    public ClientContext(String clientId, boolean interactive) {
+        this.clientId = clientId != null ? clientId : DEFAULT_CLIENT;
+        this.interactive = interactive;
+    }
+
+    public static ClientContext current() {
+        ClientContext context = current.get();
+        return context != null ? context : DEFAULT;
+    }
+
+    public static void set(ClientContext context) {
+        if(context == null) {
+            current.remove();
+        } else {
+            current.set(context);
+        }
+    }
+
+    public static void clear() {
+        current.remove();
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return true if someone is waiting on this work interactively
+     * (e.g. a single query), so it should jump ahead of bulk work
+     */
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    public ClientContext withInteractive(boolean interactive) {
+        return interactive == this.interactive ? this : new ClientContext(clientId, interactive);
+    }
+
+}
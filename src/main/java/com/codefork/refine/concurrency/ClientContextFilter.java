@@ -0,0 +1,46 @@
+package com.codefork.refine.concurrency;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Sets the ClientContext for each request, identifying the client by
+ * remote address, or by a request header if one is configured and present.
+ *
+ * Anyone can send any header, so one should only be configured when a
+ * proxy in front of the app sets it (overwriting what clients sent);
+ * otherwise clients could claim someone else's share of the threads.
+ */
+public class ClientContextFilter extends OncePerRequestFilter {
+
+    private final String header;
+
+    /**
+     * @param header name of the header identifying the client; null or empty
+     *               to go by remote address only
+     */
+    public ClientContextFilter(String header) {
+        this.header = header != null && header.trim().length() > 0 ? header.trim() : null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String clientId = header != null ? request.getHeader(header) : null;
+        if(clientId == null || clientId.trim().length() == 0) {
+            clientId = request.getRemoteAddr();
+        }
+        ClientContext.set(new ClientContext(clientId.trim(), false));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ClientContext.clear();
+        }
+    }
+
+}
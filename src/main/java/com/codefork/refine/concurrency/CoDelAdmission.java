@@ -0,0 +1,59 @@
+package com.codefork.refine.concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a thread pool is overloaded, based on how long tasks sit
+ * in its queue before running (their "sojourn" time), in the style of
+ * the CoDel queue management algorithm.
+ *
+ * A queue that's briefly long is fine; what matters is a standing queue.
+ * So we only consider the pool overloaded once every task dequeued for
+ * a whole interval has waited longer than the target, and we stop as soon
+ * as one gets through in less than the target or the queue empties.
+ */
+public class CoDelAdmission {
+
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    // when sojourn times first went above target, 0 if they're below it
+    private long firstAboveTime = 0;
+    private boolean overloaded = false;
+
+    public CoDelAdmission(long targetMs, long intervalMs) {
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMs);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    /**
+     * Called each time a task is taken off the queue.
+     */
+    public void onDequeue(long sojournNanos) {
+        onDequeue(sojournNanos, System.nanoTime());
+    }
+
+    synchronized void onDequeue(long sojournNanos, long now) {
+        if(sojournNanos < targetNanos) {
+            firstAboveTime = 0;
+            overloaded = false;
+        } else if(firstAboveTime == 0) {
+            firstAboveTime = now + intervalNanos;
+        } else if(now - firstAboveTime >= 0) {
+            overloaded = true;
+        }
+    }
+
+    /**
+     * @param queueSize number of tasks currently waiting
+     * @return true if new work should be turned away
+     */
+    public synchronized boolean isOverloaded(int queueSize) {
+        if(queueSize == 0) {
+            firstAboveTime = 0;
+            overloaded = false;
+        }
+        return overloaded;
+    }
+
+}
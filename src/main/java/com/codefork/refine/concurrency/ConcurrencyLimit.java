@@ -0,0 +1,25 @@
+package com.codefork.refine.concurrency;
+
+/**
+ * An algorithm that decides how many requests can be in flight to an
+ * upstream service at once, based on how the requests we've already
+ * made turned out.
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * @return current limit on the number of requests in flight
+     */
+    int getLimit();
+
+    /**
+     * Called once for each completed upstream request.
+     *
+     * @param rttNanos time the request took
+     * @param inFlight number of requests in flight when this one completed
+     * @param dropped true if the request failed in a way that signals overload
+     *                (HTTP 429/503, timeouts)
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+
+}
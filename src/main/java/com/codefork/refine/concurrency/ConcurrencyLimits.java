@@ -0,0 +1,45 @@
+package com.codefork.refine.concurrency;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates ConcurrencyLimit instances from configuration properties.
+ */
+public class ConcurrencyLimits {
+
+    public static final String PROP_ALGORITHM = "limit.algorithm";
+    public static final String PROP_MIN = "limit.min";
+    public static final String PROP_MAX = "limit.max";
+    public static final String PROP_AIMD_BACKOFF_RATIO = "limit.aimd.backoff.ratio";
+    public static final String PROP_AIMD_TIMEOUT_MS = "limit.aimd.timeout.ms";
+
+    public static final String ALGORITHM_NONE = "none";
+    public static final String ALGORITHM_AIMD = "aimd";
+    public static final String ALGORITHM_GRADIENT = "gradient";
+
+    /**
+     * @param props data source properties
+     * @param defaultAlgorithm algorithm to use if props doesn't specify one
+     * @param initialLimit starting limit
+     * @param defaultMax maximum limit, if props doesn't specify one
+     * @return a new ConcurrencyLimit, or null if algorithm is "none"
+     */
+    public static ConcurrencyLimit create(Properties props, String defaultAlgorithm, int initialLimit, int defaultMax) {
+        String algorithm = props.getProperty(PROP_ALGORITHM, defaultAlgorithm);
+        int min = Integer.parseInt(props.getProperty(PROP_MIN, "1"));
+        int max = Integer.parseInt(props.getProperty(PROP_MAX, String.valueOf(defaultMax)));
+
+        if(ALGORITHM_AIMD.equalsIgnoreCase(algorithm)) {
+            double backoffRatio = Double.parseDouble(props.getProperty(PROP_AIMD_BACKOFF_RATIO, "0.9"));
+            long timeoutMs = Long.parseLong(props.getProperty(PROP_AIMD_TIMEOUT_MS, "5000"));
+            return new AIMDLimit(initialLimit, min, max, backoffRatio, TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        } else if(ALGORITHM_GRADIENT.equalsIgnoreCase(algorithm)) {
+            return new GradientLimit(initialLimit, min, max);
+        } else if(algorithm != null && !ALGORITHM_NONE.equalsIgnoreCase(algorithm)) {
+            throw new IllegalArgumentException("Unknown concurrency limit algorithm: " + algorithm);
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,305 @@
+package com.codefork.refine.concurrency;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A work queue for a ThreadPoolExecutor that keeps a sub-queue per client
+ * and takes tasks from them using deficit round-robin, so that a client
+ * with a huge backlog only gets its share of the threads instead of making
+ * everyone else wait behind it.
+ *
+ * Each client's share is proportional to its weight (default 1). Tasks
+ * marked interactive go in a separate lane that is always served first,
+ * and is itself shared fairly between clients.
+ *
+ * Tasks are attributed to a client by wrapping them in a ClientTask;
+ * anything else is treated as coming from the default client.
+ */
+public class FairBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * A task tagged with the context it was submitted from.
+     */
+    public static class ClientTask implements Runnable {
+        private final ClientContext context;
+        private final Runnable task;
+
+        public ClientTask(ClientContext context, Runnable task) {
+            this.context = context;
+            this.task = task;
+        }
+
+        public ClientContext getContext() {
+            return context;
+        }
+
+        @Override
+        public void run() {
+            ClientContext previous = ClientContext.current();
+            ClientContext.set(context);
+            try {
+                task.run();
+            } finally {
+                ClientContext.set(previous);
+            }
+        }
+    }
+
+    /**
+     * One lane of per-client sub-queues, served by deficit round-robin.
+     */
+    private class Lane {
+        private final Map<String, ClientQueue> queues = new HashMap<>();
+        // clients with tasks waiting, in the order they're served
+        private final ArrayDeque<ClientQueue> active = new ArrayDeque<>();
+        private int size = 0;
+
+        void add(String clientId, Runnable task) {
+            ClientQueue queue = queues.get(clientId);
+            if(queue == null) {
+                queue = new ClientQueue(clientId);
+                queues.put(clientId, queue);
+                active.addLast(queue);
+            }
+            queue.tasks.addLast(task);
+            size++;
+        }
+
+        Runnable poll() {
+            ClientQueue queue = active.peekFirst();
+            if(queue != null) {
+                if(queue.deficit < 1) {
+                    queue.deficit += getWeight(queue.clientId);
+                }
+                Runnable task = queue.tasks.pollFirst();
+                queue.deficit -= 1;
+                size--;
+                if(queue.tasks.isEmpty()) {
+                    active.pollFirst();
+                    queues.remove(queue.clientId);
+                } else if(queue.deficit < 1) {
+                    // used up its share for this round
+                    active.addLast(active.pollFirst());
+                }
+                return task;
+            }
+            return null;
+        }
+
+        Runnable peek() {
+            ClientQueue queue = active.peekFirst();
+            return queue != null ? queue.tasks.peekFirst() : null;
+        }
+
+        boolean remove(Object o) {
+            for(Iterator<ClientQueue> iter = active.iterator(); iter.hasNext(); ) {
+                ClientQueue queue = iter.next();
+                if(queue.tasks.remove(o)) {
+                    size--;
+                    if(queue.tasks.isEmpty()) {
+                        iter.remove();
+                        queues.remove(queue.clientId);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void addAllTo(Collection<Runnable> c) {
+            for(ClientQueue queue : active) {
+                c.addAll(queue.tasks);
+            }
+        }
+    }
+
+    private static class ClientQueue {
+        private final String clientId;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private int deficit = 0;
+
+        ClientQueue(String clientId) {
+            this.clientId = clientId;
+        }
+    }
+
+    private final Map<String, Integer> weights;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Lane interactive = new Lane();
+    private final Lane bulk = new Lane();
+
+    /**
+     * @param weights client id => relative share of the pool; clients not
+     *                listed get 1
+     */
+    public FairBlockingQueue(Map<String, Integer> weights) {
+        this.weights = new HashMap<>(weights);
+    }
+
+    private int getWeight(String clientId) {
+        return Math.max(1, weights.getOrDefault(clientId, 1));
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        if(runnable == null) {
+            throw new NullPointerException();
+        }
+        ClientContext context = runnable instanceof ClientTask
+                ? ((ClientTask) runnable).getContext() : ClientContext.current();
+        lock.lock();
+        try {
+            (context.isInteractive() ? interactive : bulk).add(context.getClientId(), runnable);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public void put(Runnable runnable) {
+        offer(runnable);
+    }
+
+    @Override
+    public boolean offer(Runnable runnable, long timeout, TimeUnit unit) {
+        return offer(runnable);
+    }
+
+    private Runnable dequeue() {
+        Runnable task = interactive.poll();
+        return task != null ? task : bulk.poll();
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while((task = dequeue()) == null) {
+                notEmpty.await();
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while((task = dequeue()) == null) {
+                if(nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            Runnable task = interactive.peek();
+            return task != null ? task : bulk.peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            return interactive.remove(o) || bulk.remove(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return interactive.size + bulk.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return a snapshot of the queued tasks; removing through it isn't supported
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            interactive.addAllTo(snapshot);
+            bulk.addAllTo(snapshot);
+        } finally {
+            lock.unlock();
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int n = 0;
+            Runnable task;
+            while(n < maxElements && (task = dequeue()) != null) {
+                c.add(task);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.codefork.refine.concurrency;
+
+/**
+ * Adjusts the limit based on how request latency is trending, in the style
+ * of TCP Vegas: the ratio of the long-term average RTT to the recent RTT is
+ * the "gradient". When recent requests are slower than usual, the upstream
+ * is queueing them, and the gradient shrinks the limit before the upstream
+ * starts rejecting requests outright. When latency is stable, the limit
+ * grows by a small headroom (the square root of the limit) so we keep
+ * probing for more capacity.
+ */
+public class GradientLimit implements ConcurrencyLimit {
+
+    // how much slower than the long-term average recent requests can be
+    // before we start backing off
+    private static final double TOLERANCE = 1.5;
+
+    // weights for the exponential moving averages of RTT
+    private static final double SHORT_WINDOW_WEIGHT = 0.2;
+    private static final double LONG_WINDOW_WEIGHT = 0.01;
+
+    // how far to move towards a newly calculated limit on each sample
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private double shortRtt = 0;
+    private double longRtt = 0;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if(shortRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+        } else {
+            shortRtt = shortRtt * (1 - SHORT_WINDOW_WEIGHT) + rttNanos * SHORT_WINDOW_WEIGHT;
+            longRtt = longRtt * (1 - LONG_WINDOW_WEIGHT) + rttNanos * LONG_WINDOW_WEIGHT;
+        }
+
+        // latency has dropped well below the long-term average (e.g. after a
+        // slow spell upstream); decay the average faster, so it doesn't stay
+        // inflated by the slow spell and the limit can grow again
+        if(longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        if(dropped) {
+            limit = Math.max(minLimit, limit / 2);
+            return;
+        }
+
+        // the limit isn't being used, so there's nothing to learn about capacity
+        if(inFlight * 2 < limit) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+}
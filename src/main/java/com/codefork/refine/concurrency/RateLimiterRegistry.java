@@ -0,0 +1,117 @@
+package com.codefork.refine.concurrency;
+
+import com.codefork.refine.Config;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits requests by upstream host, regardless of which data source
+ * or controller they come from. Every connection made through
+ * LiveConnectionFactory goes through here.
+ *
+ * Limits are configured with:
+ *
+ * ratelimit.HOST.rate=requests per second
+ * ratelimit.HOST.burst=max requests at once after a quiet period
+ *
+ * and ratelimit.default.rate/burst for hosts not listed. Hosts without
+ * a rate aren't limited.
+ */
+@Component
+public class RateLimiterRegistry {
+
+    public static final String PROP_PREFIX = "ratelimit.";
+    public static final String RATE_SUFFIX = ".rate";
+    public static final String BURST_SUFFIX = ".burst";
+    public static final String DEFAULT_HOST = "default";
+
+    private final Log log = LogFactory.getLog(RateLimiterRegistry.class);
+
+    private final Properties properties;
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    // hosts with no limit configured
+    private final Map<String, Boolean> unlimited = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RateLimiterRegistry(Config config) {
+        this(config.getProperties());
+    }
+
+    public RateLimiterRegistry(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return the bucket for host, or null if it isn't rate limited
+     */
+    public TokenBucket getBucket(String host) {
+        if(host == null || unlimited.containsKey(host)) {
+            return null;
+        }
+        TokenBucket bucket = buckets.get(host);
+        if(bucket != null) {
+            return bucket;
+        }
+        bucket = createBucket(host);
+        if(bucket == null) {
+            unlimited.put(host, Boolean.TRUE);
+            return null;
+        }
+        TokenBucket existing = buckets.putIfAbsent(host, bucket);
+        return existing != null ? existing : bucket;
+    }
+
+    private TokenBucket createBucket(String host) {
+        String rate = properties.getProperty(PROP_PREFIX + host + RATE_SUFFIX,
+                properties.getProperty(PROP_PREFIX + DEFAULT_HOST + RATE_SUFFIX));
+        if(rate == null || Double.parseDouble(rate) <= 0) {
+            return null;
+        }
+        String burst = properties.getProperty(PROP_PREFIX + host + BURST_SUFFIX,
+                properties.getProperty(PROP_PREFIX + DEFAULT_HOST + BURST_SUFFIX, rate));
+        log.info(String.format("Rate limiting %s to %s requests/s (burst %s)", host, rate, burst));
+        return new TokenBucket(Double.parseDouble(rate), Double.parseDouble(burst));
+    }
+
+    /**
+     * Waits, if necessary, until a request can be made to host.
+     */
+    public void acquire(String host) throws InterruptedIOException {
+        TokenBucket bucket = getBucket(host);
+        if(bucket == null) {
+            return;
+        }
+        long wait = bucket.reserve();
+        if(wait > 0) {
+            log.debug(String.format("Throttling request to %s for %d ms", host, TimeUnit.NANOSECONDS.toMillis(wait)));
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                bucket.refund();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for rate limit on " + host);
+            }
+        }
+    }
+
+    /**
+     * @return buckets in use, by host
+     */
+    public Map<String, TokenBucket> getBuckets() {
+        return Collections.unmodifiableMap(new TreeMap<>(buckets));
+    }
+
+}
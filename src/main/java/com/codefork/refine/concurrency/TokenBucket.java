@@ -0,0 +1,189 @@
+package com.codefork.refine.concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that refills at a steady rate, up to a maximum burst.
+ *
+ * Callers don't wait inside the bucket: reserve() takes a token right away,
+ * going into debt if none are available, and returns how long the caller
+ * has to wait before using it. Since later callers reserve tokens after
+ * the debt of earlier ones, permits are handed out in the order they were
+ * asked for.
+ */
+public class TokenBucket {
+
+    private final double ratePerSecond;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    private long acquired = 0;
+    private long throttled = 0;
+    private long waitedNanos = 0;
+
+    // per-second counts for the last WINDOW_SECONDS, for reporting current rates
+    private static final int WINDOW_SECONDS = 60;
+    private final long[] windowSecond = new long[WINDOW_SECONDS];
+    private final int[] windowAcquired = new int[WINDOW_SECONDS];
+    private final int[] windowThrottled = new int[WINDOW_SECONDS];
+
+    /**
+     * @param ratePerSecond number of permits added per second
+     * @param burst maximum number of permits that can be used at once after a quiet period
+     */
+    public TokenBucket(double ratePerSecond, double burst) {
+        if(ratePerSecond <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    /**
+     * Reserves a permit.
+     * @return nanoseconds the caller should wait before using the permit; 0 if none
+     */
+    public long reserve() {
+        return reserve(System.nanoTime());
+    }
+
+    synchronized long reserve(long now) {
+        refill(now);
+        tokens -= 1;
+        acquired++;
+        int slot = slot(now);
+        windowAcquired[slot]++;
+        if(tokens >= 0) {
+            return 0;
+        }
+        long wait = (long) Math.ceil(-tokens / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+        throttled++;
+        windowThrottled[slot]++;
+        waitedNanos += wait;
+        return wait;
+    }
+
+    /**
+     * Gives back a permit that was reserved but won't be used, e.g. because
+     * the caller was interrupted while waiting for it. Without this, the
+     * bucket would stay in debt for requests that were never made.
+     */
+    public void refund() {
+        refund(System.nanoTime());
+    }
+
+    synchronized void refund(long now) {
+        refill(now);
+        tokens = Math.min(burst, tokens + 1);
+        acquired--;
+    }
+
+    /**
+     * Takes a permit only if one is available right now.
+     * @return true if a permit was taken
+     */
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if(tokens >= 1) {
+            tokens -= 1;
+            acquired++;
+            windowAcquired[slot(System.nanoTime())]++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reserves a permit and waits until it can be used.
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if(wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                refund();
+                throw e;
+            }
+        }
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(burst, tokens + elapsedSeconds * ratePerSecond);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * @return index into the window arrays for the given time, clearing it if it's stale
+     */
+    private int slot(long now) {
+        long second = TimeUnit.NANOSECONDS.toSeconds(now);
+        int slot = (int) Math.floorMod(second, (long) WINDOW_SECONDS);
+        if(windowSecond[slot] != second) {
+            windowSecond[slot] = second;
+            windowAcquired[slot] = 0;
+            windowThrottled[slot] = 0;
+        }
+        return slot;
+    }
+
+    private double windowRate(int[] counts) {
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long total = 0;
+        for(int i = 0; i < WINDOW_SECONDS; i++) {
+            if(second - windowSecond[i] < WINDOW_SECONDS) {
+                total += counts[i];
+            }
+        }
+        return total / (double) WINDOW_SECONDS;
+    }
+
+    /**
+     * @return permits handed out per second, averaged over the last minute
+     */
+    public synchronized double getCurrentRate() {
+        return windowRate(windowAcquired);
+    }
+
+    /**
+     * @return permits per second that had to wait, averaged over the last minute
+     */
+    public synchronized double getThrottledRate() {
+        return windowRate(windowThrottled);
+    }
+
+    /**
+     * @return total number of permits handed out
+     */
+    public synchronized long getAcquired() {
+        return acquired;
+    }
+
+    /**
+     * @return number of permits that weren't available right away
+     */
+    public synchronized long getThrottled() {
+        return throttled;
+    }
+
+    /**
+     * @return total time callers were asked to wait, in ms
+     */
+    public synchronized long getWaitedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(waitedNanos);
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.codefork.refine.controllers;
+
+import com.codefork.refine.cache.CacheSnapshots;
+import com.codefork.refine.resources.CacheSnapshotResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * Writes a snapshot of the cache on demand, e.g. before a deploy.
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheSnapshotController {
+
+    CacheSnapshots cacheSnapshots;
+
+    @Autowired
+    public CacheSnapshotController(CacheSnapshots cacheSnapshots) {
+        this.cacheSnapshots = cacheSnapshots;
+    }
+
+    @PostMapping("/snapshot")
+    public CacheSnapshotResult snapshot() throws IOException {
+        return cacheSnapshots.save(cacheSnapshots.getSnapshotFile());
+    }
+
+}
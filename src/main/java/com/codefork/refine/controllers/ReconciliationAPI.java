@@ -3,12 +3,15 @@ package com.codefork.refine.controllers;
 import com.codefork.refine.datasource.DataSource;
 import com.codefork.refine.resources.SearchResponse;
 import com.codefork.refine.resources.ServiceMetaDataResponse;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface ReconciliationAPI {
 
@@ -22,14 +25,24 @@ public interface ReconciliationAPI {
 
     @RequestMapping(value = { "", "/" }, params = "query")
     @ResponseBody
-    default SearchResponse querySingle(@RequestParam(value = "query") String query) {
-        return getDataSource().querySingle(query, getDataSource().getSearchQueryFactory());
+    default CompletableFuture<SearchResponse> querySingle(@RequestParam(value = "query") String query) {
+        return getDataSource().querySingleAsync(query, getDataSource().getSearchQueryFactory());
     }
 
     @RequestMapping(value = { "", "/" }, params = "queries")
     @ResponseBody
-    default Map<String, SearchResponse> queryMultiple(@RequestParam(value = "queries") String queries) {
-        return getDataSource().queryMultiple(queries, getDataSource().getSearchQueryFactory());
+    default CompletableFuture<Map<String, SearchResponse>> queryMultiple(@RequestParam(value = "queries") String queries) {
+        return getDataSource().queryMultipleAsync(queries, getDataSource().getSearchQueryFactory());
+    }
+
+    /**
+     * Clients that send "Accept: application/x-ndjson" get each result
+     * as soon as it's ready instead of waiting for the whole batch.
+     */
+    @RequestMapping(value = { "", "/" }, params = "queries", produces = DataSource.NDJSON)
+    @ResponseBody
+    default ResponseEntity<ResponseBodyEmitter> queryMultipleStreaming(@RequestParam(value = "queries") String queries) {
+        return getDataSource().queryMultipleStreaming(queries, getDataSource().getSearchQueryFactory());
     }
 
 }
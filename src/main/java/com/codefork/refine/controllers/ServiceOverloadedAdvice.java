@@ -0,0 +1,31 @@
+package com.codefork.refine.controllers;
+
+import com.codefork.refine.datasource.ServiceOverloadedException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * Turns away requests that data sources are too overloaded to handle,
+ * applies to all controllers.
+ */
+@ControllerAdvice
+public class ServiceOverloadedAdvice {
+
+    Log log = LogFactory.getLog(ServiceOverloadedAdvice.class);
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<String> serviceOverloaded(ServiceOverloadedException ex) {
+        log.warn("Shedding request: " + ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(ex.getMessage());
+    }
+
+}
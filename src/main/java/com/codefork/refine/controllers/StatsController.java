@@ -1,10 +1,18 @@
 package com.codefork.refine.controllers;
 
+import com.codefork.refine.cache.CacheStatsProvider;
+import com.codefork.refine.concurrency.CircuitBreaker;
+import com.codefork.refine.concurrency.CircuitBreakerRegistry;
+import com.codefork.refine.concurrency.RateLimiterRegistry;
+import com.codefork.refine.concurrency.TokenBucket;
 import com.codefork.refine.datasource.DataSource;
 import com.codefork.refine.datasource.stats.Interval;
+import com.codefork.refine.resources.StatsCircuitBreaker;
 import com.codefork.refine.resources.StatsDataSource;
+import com.codefork.refine.resources.StatsRateLimit;
 import com.codefork.refine.resources.StatsReport;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -12,6 +20,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,9 +32,19 @@ public class StatsController {
 
     List<DataSource> dataSources;
 
+    RateLimiterRegistry rateLimiterRegistry;
+
+    CircuitBreakerRegistry circuitBreakerRegistry;
+
+    CacheManager cacheManager;
+
     @Autowired
-    public StatsController(List<DataSource> dataSources) {
+    public StatsController(List<DataSource> dataSources, RateLimiterRegistry rateLimiterRegistry,
+                           CircuitBreakerRegistry circuitBreakerRegistry, CacheManager cacheManager) {
         this.dataSources = dataSources;
+        this.rateLimiterRegistry = rateLimiterRegistry;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.cacheManager = cacheManager;
     }
 
     @RequestMapping(value = "")
@@ -39,7 +58,47 @@ public class StatsController {
         statsReport.setTimestamp(Interval.timestamp());
         statsReport.setDate(ZonedDateTime.now(ZoneId.systemDefault()).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
         statsReport.setDataSources(statsDataSources);
+        statsReport.setRateLimits(rateLimits());
+        statsReport.setCircuitBreakers(circuitBreakers());
+        if(cacheManager instanceof CacheStatsProvider) {
+            statsReport.setCaches(((CacheStatsProvider) cacheManager).getStats());
+        }
 
         return statsReport;
     }
+
+    private List<StatsRateLimit> rateLimits() {
+        List<StatsRateLimit> rateLimits = new ArrayList<>();
+        for(Map.Entry<String, TokenBucket> entry : rateLimiterRegistry.getBuckets().entrySet()) {
+            TokenBucket bucket = entry.getValue();
+            StatsRateLimit rateLimit = new StatsRateLimit();
+            rateLimit.setHost(entry.getKey());
+            rateLimit.setRate(bucket.getRatePerSecond());
+            rateLimit.setBurst(bucket.getBurst());
+            rateLimit.setCurrentRate(bucket.getCurrentRate());
+            rateLimit.setThrottledRate(bucket.getThrottledRate());
+            rateLimit.setAcquired(bucket.getAcquired());
+            rateLimit.setThrottled(bucket.getThrottled());
+            rateLimit.setWaitedMs(bucket.getWaitedMs());
+            rateLimits.add(rateLimit);
+        }
+        return rateLimits;
+    }
+
+    private List<StatsCircuitBreaker> circuitBreakers() {
+        List<StatsCircuitBreaker> circuitBreakers = new ArrayList<>();
+        for(Map.Entry<String, CircuitBreaker> entry : circuitBreakerRegistry.getBreakers().entrySet()) {
+            CircuitBreaker breaker = entry.getValue();
+            StatsCircuitBreaker circuitBreaker = new StatsCircuitBreaker();
+            circuitBreaker.setHost(entry.getKey());
+            circuitBreaker.setState(breaker.getState().name());
+            circuitBreaker.setFailureRate(breaker.getFailureRate());
+            circuitBreaker.setSlowCallRate(breaker.getSlowCallRate());
+            circuitBreaker.setCalls(breaker.getCalls());
+            circuitBreaker.setRejected(breaker.getRejected());
+            circuitBreaker.setTimesOpened(breaker.getTimesOpened());
+            circuitBreakers.add(circuitBreaker);
+        }
+        return circuitBreakers;
+    }
 }
@@ -0,0 +1,15 @@
+package com.codefork.refine.datasource;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request to an upstream service when the
+ * same search failed recently, and that failure is still cached.
+ */
+public class CachedErrorException extends IOException {
+
+    public CachedErrorException() {
+        super("Search failed recently, not retrying until the cached error expires");
+    }
+
+}
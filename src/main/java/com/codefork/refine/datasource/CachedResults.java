@@ -0,0 +1,140 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.cache.ResultListCodec;
+import com.codefork.refine.cache.TimeToLive;
+import com.codefork.refine.resources.Result;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What WebServiceDataSource stores in the cache: search results along
+ * with when they were fetched, so it can tell when they've gone stale,
+ * and the exact query text they were scored for.
+ *
+ * The results are kept encoded (see ResultListCodec), and decoded each
+ * time they're asked for.
+ *
+ * An entry can also record that the search failed, so the failure can
+ * be returned for a short while without asking the upstream service again.
+ *
+ * If the upstream response had an ETag or Last-Modified header, they're
+ * kept too, so the entry can be revalidated rather than fetched again.
+ */
+public class CachedResults implements Serializable, TimeToLive {
+
+    private static final long serialVersionUID = 5L;
+
+    private final String query;
+    private final byte[] encodedResults;
+    private final int resultCount;
+    private final long storedAt;
+    private final boolean error;
+    private final long timeToLiveMs;
+    private final Validators validators;
+
+    // only counts hits while the entry stays on the heap; that's good enough
+    // for deciding whether it's popular
+    private transient AtomicInteger recentHits;
+
+    /**
+     * @param query text of the query the results are for
+     * @param timeToLiveMs how long to cache the results, or 0 for the cache's TTL
+     */
+    public CachedResults(String query, List<Result> results, long timeToLiveMs) {
+        this(query, results, timeToLiveMs, null);
+    }
+
+    /**
+     * @param validators from the response the results came from; may be null
+     */
+    public CachedResults(String query, List<Result> results, long timeToLiveMs, Validators validators) {
+        this(query, ResultListCodec.encode(results), results.size(), false, timeToLiveMs, validators);
+    }
+
+    private CachedResults(String query, byte[] encodedResults, int resultCount, boolean error,
+                          long timeToLiveMs, Validators validators) {
+        this.query = query;
+        this.encodedResults = encodedResults;
+        this.resultCount = resultCount;
+        this.storedAt = System.currentTimeMillis();
+        this.error = error;
+        this.timeToLiveMs = timeToLiveMs;
+        this.validators = validators;
+    }
+
+    /**
+     * @return an entry recording that a search failed
+     */
+    public static CachedResults error(long timeToLiveMs) {
+        return new CachedResults(null, ResultListCodec.encode(new ArrayList<>()), 0, true, timeToLiveMs, null);
+    }
+
+    /**
+     * @return a copy of this entry that's as old as one stored now, for
+     * when upstream says the results haven't changed
+     */
+    public CachedResults renewed() {
+        return new CachedResults(query, encodedResults, resultCount, error, timeToLiveMs, validators);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return a newly decoded copy of the results
+     */
+    public List<Result> getResults() {
+        return ResultListCodec.decode(encodedResults);
+    }
+
+    /**
+     * @return number of bytes the encoded results take up
+     */
+    public int getEncodedSize() {
+        return encodedResults.length;
+    }
+
+    public long getStoredAt() {
+        return storedAt;
+    }
+
+    /**
+     * @return validators for revalidating the results, or null if there aren't any
+     */
+    public Validators getValidators() {
+        return validators;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public boolean isEmpty() {
+        return resultCount == 0;
+    }
+
+    @Override
+    public long getTimeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+    @Override
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - storedAt;
+    }
+
+    /**
+     * @return number of hits recorded so far, including this one
+     */
+    public synchronized int recordHit() {
+        if(recentHits == null) {
+            recentHits = new AtomicInteger();
+        }
+        return recentHits.incrementAndGet();
+    }
+
+}
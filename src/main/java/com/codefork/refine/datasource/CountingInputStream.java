@@ -0,0 +1,83 @@
+package com.codefork.refine.datasource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes read through it. Once the end of the stream is reached,
+ * or it's closed, whichever comes first, onDone is run with the count.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private final LongConsumer onDone;
+    private long count = 0;
+    private boolean done = false;
+
+    CountingInputStream(InputStream in) {
+        this(in, null);
+    }
+
+    CountingInputStream(InputStream in, LongConsumer onDone) {
+        super(in);
+        this.onDone = onDone;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b >= 0) {
+            count++;
+        } else {
+            finish();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if(n > 0) {
+            count += n;
+        } else if(n < 0) {
+            finish();
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            finish();
+        }
+    }
+
+    private void finish() {
+        if(!done) {
+            done = true;
+            if(onDone != null) {
+                onDone.accept(count);
+            }
+        }
+    }
+
+}
@@ -20,24 +20,44 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 /**
  * A super-generic reconciliation data source.
  */
 public abstract class DataSource {
 
+    public static final String NDJSON = "application/x-ndjson";
+
+    // writes streaming responses to clients; a line only waits here for the socket's buffer
+    private static final ExecutorService STREAM_WRITERS = Executors.newFixedThreadPool(4, r -> {
+        Thread t = new Thread(r, "ndjson-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
     protected Log log = LogFactory.getLog(this.getClass());
 
     // human readable name
@@ -136,6 +156,35 @@ public abstract class DataSource {
      */
     public abstract Map<String, SearchResponse> search(Map<String, SearchQuery> queryEntries);
 
+    /**
+     * Streaming version of search(Map): passes each response to the consumer,
+     * possibly from another thread, and returns once all of them have been passed.
+     * Subclasses that can produce results one at a time should override this;
+     * this default waits for the whole set.
+     */
+    public void search(Map<String, SearchQuery> queryEntries, BiConsumer<String, SearchResponse> consumer) {
+        search(queryEntries).forEach(consumer);
+    }
+
+    /**
+     * Asynchronous version of search(Map, BiConsumer): returns right away, with a
+     * future that completes once every response has been passed to the consumer.
+     * Subclasses that don't need to block a thread while waiting on results
+     * should override this; this default runs the search on the calling thread.
+     */
+    public CompletableFuture<Void> searchAsync(Map<String, SearchQuery> queryEntries, BiConsumer<String, SearchResponse> consumer) {
+        search(queryEntries, consumer);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Asynchronous version of search(Map).
+     */
+    public CompletableFuture<Map<String, SearchResponse>> searchAsync(Map<String, SearchQuery> queryEntries) {
+        Map<String, SearchResponse> results = new ConcurrentHashMap<>();
+        return searchAsync(queryEntries, results::put).thenApply(v -> new HashMap<>(results));
+    }
+
     /**
      * Returns the service metadata that OpenRefine uses on its first request
      * to the service.
@@ -147,6 +196,10 @@ public abstract class DataSource {
     }
 
     public SearchResponse querySingle(String query, SearchQueryFactory searchQueryFactory) {
+        return querySingleAsync(query, searchQueryFactory).join();
+    }
+
+    public CompletableFuture<SearchResponse> querySingleAsync(String query, SearchQueryFactory searchQueryFactory) {
         log.debug("query=" + query);
         try {
             SearchQuery searchQuery;
@@ -160,41 +213,116 @@ public abstract class DataSource {
             Map<String, SearchQuery> queriesMap = new HashMap<>();
             queriesMap.put("q0", searchQuery);
 
-            Map<String, SearchResponse> resultsMap = search(queriesMap);
-
-            return new SearchResponse(resultsMap.get("q0").getResult());
+            return searchAsync(queriesMap).thenApply(resultsMap ->
+                    new SearchResponse(resultsMap.get("q0").getResult()));
         } catch (JsonProcessingException jse) {
             log.error("Got an error processing JSON: " + jse.toString());
         }
-        return null;
+        return CompletableFuture.completedFuture(null);
     }
 
     public Map<String, SearchResponse> queryMultiple(String queries, SearchQueryFactory searchQueryFactory) {
+        return queryMultipleAsync(queries, searchQueryFactory).join();
+    }
+
+    public CompletableFuture<Map<String, SearchResponse>> queryMultipleAsync(String queries, SearchQueryFactory searchQueryFactory) {
         log.debug("queries=" + queries);
         try {
-            JsonNode root = mapper.readTree(queries);
+            Map<String, SearchQuery> queriesMap = parseQueries(queries, searchQueryFactory);
 
-            Map<String, SearchQuery> queriesMap = new HashMap<>();
+            return searchAsync(queriesMap).thenApply(resultsMap -> {
+                log.debug(String.format("response=%s", new DeferredJSON(resultsMap)));
+                return resultsMap;
+            });
+        } catch (JsonProcessingException jse) {
+            log.error("Got an error processing JSON: " + jse.toString());
+        }
+        return CompletableFuture.completedFuture(null);
+    }
 
-            for(Iterator<Map.Entry<String, JsonNode>> iter = root.fields(); iter.hasNext(); ) {
-                Map.Entry<String, JsonNode> fieldEntry = iter.next();
+    /**
+     * Like queryMultiple(), but returns an emitter that writes the results
+     * as newline-delimited JSON, one line per query, as soon as each one
+     * is ready. Each line is an object with a single key:
+     *
+     * {"q1":{"result":[...]}}
+     *
+     * so merging all the lines gives the same thing queryMultiple() returns.
+     */
+    public ResponseEntity<ResponseBodyEmitter> queryMultipleStreaming(String queries, SearchQueryFactory searchQueryFactory) {
+        log.debug("queries=" + queries);
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        ResponseEntity<ResponseBodyEmitter> response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON)).body(emitter);
 
-                String indexKey = fieldEntry.getKey();
-                JsonNode queryStruct = fieldEntry.getValue();
+        Map<String, SearchQuery> queriesMap;
+        try {
+            queriesMap = parseQueries(queries, searchQueryFactory);
+        } catch (JsonProcessingException jse) {
+            log.error("Got an error processing JSON: " + jse.toString());
+            emitter.complete();
+            return response;
+        }
 
-                SearchQuery searchQuery = searchQueryFactory.createSearchQuery(queryStruct);
-                queriesMap.put(indexKey, searchQuery);
+        MediaType lineType = new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+        LineWriter writer = new LineWriter();
+        AtomicBoolean clientGone = new AtomicBoolean(false);
+        AtomicReference<CompletableFuture<Void>> search = new AtomicReference<>();
+        search.set(searchAsync(queriesMap, (key, searchResponse) -> writer.write(() -> {
+            if(clientGone.get()) {
+                return;
+            }
+            try {
+                emitter.send(mapper.writeValueAsString(Collections.singletonMap(key, searchResponse)) + "\n", lineType);
+            } catch (IOException ioe) {
+                log.info("Error writing streaming response, client probably disconnected: " + ioe);
+                clientGone.set(true);
+                // nobody's going to see the rest of the results
+                CompletableFuture<Void> f = search.get();
+                if(f != null) {
+                    f.cancel(false);
+                }
             }
+        })));
+        search.get().whenComplete((v, t) -> writer.write(() -> {
+            if(t != null && !clientGone.get()) {
+                emitter.completeWithError(t);
+            } else {
+                emitter.complete();
+            }
+        }));
+        return response;
+    }
 
-            Map<String, SearchResponse> resultsMap = search(queriesMap);
+    /**
+     * Writes the lines of a streaming response, in order, on STREAM_WRITERS,
+     * so results are handed off right away instead of waiting on the client
+     * in the threads that produce them.
+     */
+    private static class LineWriter {
+        private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
 
-            log.debug(String.format("response=%s", new DeferredJSON(resultsMap)));
+        synchronized void write(Runnable line) {
+            last = last.thenRunAsync(line, STREAM_WRITERS);
+        }
+    }
 
-            return resultsMap;
-        } catch (JsonProcessingException jse) {
-            log.error("Got an error processing JSON: " + jse.toString());
+    private Map<String, SearchQuery> parseQueries(String queries, SearchQueryFactory searchQueryFactory)
+            throws JsonProcessingException {
+        JsonNode root = mapper.readTree(queries);
+
+        Map<String, SearchQuery> queriesMap = new HashMap<>();
+
+        for(Iterator<Map.Entry<String, JsonNode>> iter = root.fields(); iter.hasNext(); ) {
+            Map.Entry<String, JsonNode> fieldEntry = iter.next();
+
+            String indexKey = fieldEntry.getKey();
+            JsonNode queryStruct = fieldEntry.getValue();
+
+            SearchQuery searchQuery = searchQueryFactory.createSearchQuery(queryStruct);
+            queriesMap.put(indexKey, searchQuery);
         }
-        return null;
+        return queriesMap;
     }
 
     public ProposePropertiesResponse proposeProperties(String type, int limit)
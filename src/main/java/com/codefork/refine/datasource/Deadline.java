@@ -0,0 +1,70 @@
+package com.codefork.refine.datasource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a reconciliation request should be answered.
+ *
+ * The deadline for the search running on the current thread is kept in
+ * a ThreadLocal, so that code far from the SearchBatch (e.g. opening
+ * connections) can shorten its timeouts to fit in the time that's left.
+ */
+public final class Deadline {
+
+    public static final Deadline NONE = new Deadline(false, 0);
+
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    private final boolean set;
+    private final long expiresAtNanos;
+
+    private Deadline(boolean set, long expiresAtNanos) {
+        this.set = set;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @return a deadline ms milliseconds from now, or NONE if ms isn't positive
+     */
+    public static Deadline after(long ms) {
+        if(ms <= 0) {
+            return NONE;
+        }
+        return new Deadline(true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    /**
+     * @return deadline for the search running on this thread, NONE if there isn't one
+     */
+    public static Deadline current() {
+        Deadline deadline = current.get();
+        return deadline != null ? deadline : NONE;
+    }
+
+    static void setCurrent(Deadline deadline) {
+        if(deadline == null || deadline == NONE) {
+            current.remove();
+        } else {
+            current.set(deadline);
+        }
+    }
+
+    public boolean isSet() {
+        return set;
+    }
+
+    public boolean isExpired() {
+        return set && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * @return ms until the deadline (0 if it has passed), or Long.MAX_VALUE if not set
+     */
+    public long remainingMillis() {
+        if(!set) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.codefork.refine.datasource;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request to an upstream service when the
+ * deadline for the reconciliation request has already passed.
+ */
+public class DeadlineExceededException extends IOException {
+
+    public DeadlineExceededException() {
+        super("Deadline for request has passed");
+    }
+
+}
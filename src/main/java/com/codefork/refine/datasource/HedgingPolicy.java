@@ -0,0 +1,196 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.ThreadPool;
+import com.codefork.refine.datasource.stats.CounterType;
+import com.codefork.refine.datasource.stats.Stats;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends a duplicate of an upstream request that's taking longer than
+ * most do, and uses whichever copy answers first. This trims the long
+ * tail of requests that hang for seconds, at the cost of a few percent
+ * more requests: only requests slower than the given percentile of
+ * recent ones (95th, by default) get a hedge.
+ *
+ * The first attempt runs on the calling thread. The hedge runs in the
+ * thread pool passed in, and is only sent if that pool has an idle thread
+ * and nothing queued, so hedges never take the number of requests in
+ * flight past the pool size (which follows the data source's concurrency
+ * limit, if it has one). The losing attempt is cancelled by interrupting
+ * it, which aborts its request when connections go through
+ * PooledHttpClient.
+ *
+ * Off by default; turned on per data source with hedge.enabled=true.
+ */
+public class HedgingPolicy {
+
+    public static final String PROP_ENABLED = "hedge.enabled";
+    public static final String PROP_PERCENTILE = "hedge.percentile";
+    public static final String PROP_MIN_DELAY_MS = "hedge.min.delay.ms";
+    public static final String PROP_MIN_SAMPLES = "hedge.min.samples";
+
+    // number of recent latencies the percentile is taken from
+    private static final int SAMPLE_SIZE = 256;
+
+    // only decides when to send hedges; they run in the data sources' pools
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hedge-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private boolean enabled = false;
+    private double percentile = 95;
+    // never hedge sooner than this
+    private long minDelayMs = 50;
+    // don't hedge until there are enough latencies for the percentile to mean something
+    private int minSamples = 20;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private long sampleCount = 0;
+
+    public HedgingPolicy() {
+    }
+
+    /**
+     * @param props data source properties, see PROP_* constants for keys
+     */
+    public HedgingPolicy(Properties props) {
+        enabled = Boolean.parseBoolean(props.getProperty(PROP_ENABLED, String.valueOf(enabled)));
+        percentile = Double.parseDouble(props.getProperty(PROP_PERCENTILE, String.valueOf(percentile)));
+        minDelayMs = Long.parseLong(props.getProperty(PROP_MIN_DELAY_MS, String.valueOf(minDelayMs)));
+        minSamples = Integer.parseInt(props.getProperty(PROP_MIN_SAMPLES, String.valueOf(minSamples)));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records how long a successful request took.
+     */
+    public synchronized void recordLatency(long nanos) {
+        samples[(int) (sampleCount++ % SAMPLE_SIZE)] = nanos;
+    }
+
+    /**
+     * @return how long to wait for a request before hedging it, in ms,
+     * or -1 if there aren't enough samples yet
+     */
+    public long getHedgeDelayMs() {
+        long[] sorted;
+        synchronized (this) {
+            int n = (int) Math.min(sampleCount, SAMPLE_SIZE);
+            if(n == 0 || n < minSamples) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, n);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        long nanos = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        return Math.max(minDelayMs, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * Runs attempt, hedging it if it's slow and the policy is enabled.
+     * attempt may be called twice at once, from different threads, so it
+     * shouldn't share mutable state between calls.
+     *
+     * @param pool where hedges run
+     * @param stats where hedges sent and won are counted; may be null
+     * @return result of whichever attempt finished first
+     */
+    public <T> T call(Callable<T> attempt, ThreadPool pool, Stats stats) throws Exception {
+        if(!enabled) {
+            return attempt.call();
+        }
+        long delayMs = getHedgeDelayMs();
+        if(delayMs < 0) {
+            return timed(attempt);
+        }
+
+        Deadline deadline = Deadline.current();
+        FutureTask<T> primary = new FutureTask<>(() -> timed(attempt));
+        CompletableFuture<T> hedgeResult = new CompletableFuture<>();
+        AtomicReference<Future<?>> hedge = new AtomicReference<>();
+
+        ScheduledFuture<?> timer = TIMER.schedule(() -> {
+            if(primary.isDone() || !hasIdleThread(pool)) {
+                return;
+            }
+            if(stats != null) {
+                stats.getCurrentInterval().add(CounterType.HEDGES, 1);
+            }
+            hedge.set(pool.submit(() -> {
+                if(primary.isDone()) {
+                    return null;
+                }
+                Deadline.setCurrent(deadline);
+                try {
+                    hedgeResult.complete(timed(attempt));
+                    if(primary.cancel(true) && stats != null) {
+                        stats.getCurrentInterval().add(CounterType.HEDGES_WON, 1);
+                    }
+                } catch (Exception e) {
+                    // leave it to the first attempt
+                } finally {
+                    Deadline.setCurrent(null);
+                }
+                return null;
+            }));
+        }, delayMs, TimeUnit.MILLISECONDS);
+
+        primary.run();
+        timer.cancel(false);
+
+        if(primary.isCancelled()) {
+            // the hedge won; clear the interrupt it used to cancel this attempt
+            Thread.interrupted();
+            return hedgeResult.join();
+        }
+        Future<?> hedgeFuture = hedge.get();
+        if(hedgeFuture != null) {
+            hedgeFuture.cancel(true);
+        }
+        try {
+            return primary.get();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private <T> T timed(Callable<T> attempt) throws Exception {
+        long start = System.nanoTime();
+        T result = attempt.call();
+        // cancelled attempts don't say anything about how long requests take
+        if(!Thread.currentThread().isInterrupted()) {
+            recordLatency(System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    private static boolean hasIdleThread(ThreadPool pool) {
+        return pool.getQueueSize() == 0 && pool.getActiveCount() < pool.getPoolSize();
+    }
+
+}
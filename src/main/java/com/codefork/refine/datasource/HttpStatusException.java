@@ -0,0 +1,61 @@
+package com.codefork.refine.datasource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Thrown when an upstream service responds with an HTTP error status.
+ * This carries the status code and Retry-After header, so callers don't
+ * have to dig them out of the message of the IOException thrown by
+ * HttpURLConnection.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+    private final long retryAfterMs;
+
+    public HttpStatusException(int statusCode, String retryAfter, IOException cause) {
+        super(String.format("HTTP response code: %d", statusCode), cause);
+        this.statusCode = statusCode;
+        this.retryAfterMs = parseRetryAfter(retryAfter);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return number of ms the server asked us to wait before retrying,
+     * or -1 if it didn't say
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * Parses the value of a Retry-After header, which is either a number
+     * of seconds or an HTTP date.
+     * @return milliseconds to wait, or -1 if value is missing or malformed
+     */
+    public static long parseRetryAfter(String value) {
+        if(value == null || value.trim().length() == 0) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        } catch (NumberFormatException nfe) {
+            // not a number, try a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        } catch (DateTimeParseException dtpe) {
+            return -1;
+        }
+    }
+
+}
@@ -1,8 +1,11 @@
 package com.codefork.refine.datasource;
 
-
+import com.codefork.refine.concurrency.CircuitBreaker;
+import com.codefork.refine.concurrency.CircuitBreakerRegistry;
+import com.codefork.refine.concurrency.RateLimiterRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
@@ -19,9 +22,45 @@ public class LiveConnectionFactory implements ConnectionFactory {
 
     Log log = LogFactory.getLog(LiveConnectionFactory.class);
 
+    private RateLimiterRegistry rateLimiterRegistry;
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    private PooledHttpClient pooledHttpClient;
+
+    @Autowired
+    public LiveConnectionFactory(RateLimiterRegistry rateLimiterRegistry,
+                                 CircuitBreakerRegistry circuitBreakerRegistry,
+                                 PooledHttpClient pooledHttpClient) {
+        this.rateLimiterRegistry = rateLimiterRegistry;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.pooledHttpClient = pooledHttpClient;
+    }
+
+    /**
+     * Waits for the upstream host's rate limit, if there is one,
+     * before creating the connection. Connections send their requests
+     * through the shared PooledHttpClient, unless it's disabled.
+     *
+     * Pooled connections also go through the host's circuit breaker:
+     * this throws CircuitOpenException straight away if it's open, and
+     * the connection reports how its request turned out.
+     */
     public HttpURLConnection createConnection(String url) throws IOException {
+        URL u = new URL(url);
+        CircuitBreaker breaker = pooledHttpClient.isEnabled() ? circuitBreakerRegistry.acquire(u.getHost()) : null;
+        try {
+            rateLimiterRegistry.acquire(u.getHost());
+        } catch (IOException e) {
+            if(breaker != null) {
+                breaker.onCancelled();
+            }
+            throw e;
+        }
         log.debug("Making request to " + url);
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        HttpURLConnection connection = pooledHttpClient.isEnabled() ?
+                new PooledHttpURLConnection(u, pooledHttpClient, breaker) :
+                (HttpURLConnection) u.openConnection();
         connection.setConnectTimeout(TIMEOUT);
         connection.setReadTimeout(TIMEOUT);
         return connection;
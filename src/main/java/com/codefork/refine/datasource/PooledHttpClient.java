@@ -0,0 +1,179 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.Config;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A single java.net.http.HttpClient shared by every data source, so
+ * connections to upstream hosts are kept alive and reused (and multiplexed,
+ * over HTTP/2, where the host supports it) instead of being set up for
+ * each request. LiveConnectionFactory hands out HttpURLConnections that
+ * send their requests through here.
+ *
+ * Each host gets a pool of permits that limits how many requests to it can
+ * be waiting for response headers at once. A permit is given back as soon
+ * as the headers arrive, so this doesn't limit how many bodies are being
+ * read, or how many connections are open, at once. Requests over the limit
+ * wait, without blocking a thread, until one of the others gets its
+ * response headers. Sizes are configured with:
+ *
+ * http.pool.HOST.size=max requests waiting for headers at once
+ *
+ * and http.pool.default.size for hosts not listed.
+ */
+@Component
+public class PooledHttpClient {
+
+    public static final String PROP_ENABLED = "http.pooled";
+    public static final String PROP_VERSION = "http.version";
+    public static final String PROP_POOL_PREFIX = "http.pool.";
+    public static final String POOL_SIZE_SUFFIX = ".size";
+    public static final String DEFAULT_HOST = "default";
+
+    private static final int DEFAULT_POOL_SIZE = 8;
+
+    private final Log log = LogFactory.getLog(PooledHttpClient.class);
+
+    private final Properties properties;
+    private final boolean enabled;
+    private final HttpClient client;
+
+    private final ConcurrentMap<String, HostPermits> permitsByHost = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PooledHttpClient(Config config) {
+        this(config.getProperties());
+    }
+
+    public PooledHttpClient(Properties properties) {
+        this.properties = properties;
+        this.enabled = Boolean.parseBoolean(properties.getProperty(PROP_ENABLED, "true"));
+        HttpClient.Version version = HttpClient.Version.valueOf(properties.getProperty(PROP_VERSION, "HTTP_2"));
+        this.client = HttpClient.newBuilder()
+                .version(version)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(LiveConnectionFactory.TIMEOUT))
+                .build();
+    }
+
+    /**
+     * @return false if connections should be made with HttpURLConnection
+     * itself, as before this class existed
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends a request once there's a free permit for its host.
+     * @return future response, whose body must be closed when done with
+     */
+    public CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request) {
+        HostPermits permits = getPermits(request.uri().getHost());
+        CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        permits.acquire().thenRun(() -> {
+            // cancelled while waiting for a permit
+            if(result.isDone()) {
+                permits.release();
+                return;
+            }
+            try {
+                client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).whenComplete((response, e) -> {
+                    permits.release();
+                    if(e != null) {
+                        result.completeExceptionally(e);
+                    } else if(!result.complete(response)) {
+                        // nobody's waiting for it anymore; let the connection go back to the pool
+                        closeQuietly(response.body());
+                    }
+                });
+            } catch (RuntimeException e) {
+                // e.g. a request the client rejects outright; don't leak the permit
+                permits.release();
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    HostPermits getPermits(String host) {
+        return permitsByHost.computeIfAbsent(host != null ? host : DEFAULT_HOST, h -> {
+            int size = Integer.parseInt(properties.getProperty(PROP_POOL_PREFIX + h + POOL_SIZE_SUFFIX,
+                    properties.getProperty(PROP_POOL_PREFIX + DEFAULT_HOST + POOL_SIZE_SUFFIX,
+                            String.valueOf(DEFAULT_POOL_SIZE))));
+            log.info(String.format("Connection pool for %s: %d", h, size));
+            return new HostPermits(size);
+        });
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Counting semaphore whose waiters are futures rather than threads.
+     */
+    static class HostPermits {
+
+        private final int size;
+        private int inUse = 0;
+        private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+        HostPermits(int size) {
+            this.size = size;
+        }
+
+        synchronized CompletableFuture<Void> acquire() {
+            if(inUse < size) {
+                inUse++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            waiting.add(future);
+            return future;
+        }
+
+        void release() {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiting.poll();
+                if(next == null) {
+                    inUse--;
+                }
+            }
+            // hand the permit straight to the next waiter, outside the lock
+            if(next != null) {
+                next.complete(null);
+            }
+        }
+
+        synchronized int getInUse() {
+            return inUse;
+        }
+
+        synchronized int getWaiting() {
+            return waiting.size();
+        }
+    }
+
+}
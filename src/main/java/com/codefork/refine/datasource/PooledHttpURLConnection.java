@@ -0,0 +1,342 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.concurrency.CircuitBreaker;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Adapts a request sent through PooledHttpClient to the HttpURLConnection
+ * API that data sources use, so they don't need to change.
+ *
+ * Only what the data sources need is supported: GET requests, request
+ * headers, timeouts, the response code and headers, and the body (but
+ * not the error stream).
+ * disconnect() only closes the body, which lets the underlying connection
+ * be reused.
+ *
+ * HttpClient's own timeout only covers waiting for the response headers,
+ * so reads of the body are watched here: one that's blocked for longer
+ * than the read timeout closes the body and throws SocketTimeoutException,
+ * as HttpURLConnection would.
+ *
+ * If there's a circuit breaker for the host, it's told whether the request
+ * succeeded and how long that took. Server errors, and bodies that time
+ * out, count as failures; anything else is a success once its body has
+ * been read or closed.
+ */
+class PooledHttpURLConnection extends HttpURLConnection {
+
+    // only times out stalled reads of response bodies; the reads themselves happen on the callers' threads
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "http-read-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final PooledHttpClient client;
+
+    // null if there's no breaker, or once the outcome has been reported to it
+    private CircuitBreaker breaker;
+
+    private HttpResponse<InputStream> response;
+    private ResponseBody body;
+    private long start;
+
+    PooledHttpURLConnection(URL url, PooledHttpClient client) {
+        this(url, client, null);
+    }
+
+    PooledHttpURLConnection(URL url, PooledHttpClient client, CircuitBreaker breaker) {
+        super(url);
+        this.client = client;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if(response != null) {
+            return;
+        }
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(getURL().toURI());
+        } catch (URISyntaxException e) {
+            reportCancelled();
+            throw new IOException("Invalid URL: " + getURL(), e);
+        }
+        int readTimeout = getReadTimeout() > 0 ? getReadTimeout() : LiveConnectionFactory.TIMEOUT;
+        builder.timeout(Duration.ofMillis(readTimeout));
+        for(Map.Entry<String, List<String>> header : getRequestProperties().entrySet()) {
+            for(String value : header.getValue()) {
+                try {
+                    builder.header(header.getKey(), value);
+                } catch (IllegalArgumentException e) {
+                    // HttpClient sets headers like Host and Connection itself
+                }
+            }
+        }
+        builder.method(getRequestMethod(), HttpRequest.BodyPublishers.noBody());
+
+        // covers waiting for a permit and connecting, as well as the response
+        int connectTimeout = getConnectTimeout() > 0 ? getConnectTimeout() : LiveConnectionFactory.TIMEOUT;
+        start = System.nanoTime();
+        CompletableFuture<HttpResponse<InputStream>> future = client.sendAsync(builder.build());
+        try {
+            response = future.get(connectTimeout + (long) readTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            reportOutcome(start, true);
+            throw new SocketTimeoutException("Timed out waiting for response from " + getURL());
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            reportCancelled();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for response from " + getURL());
+        } catch (ExecutionException e) {
+            reportOutcome(start, true);
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        responseCode = response.statusCode();
+        if(responseCode >= 500) {
+            reportOutcome(start, true);
+        }
+        body = new ResponseBody(response.body(), readTimeout);
+        connected = true;
+    }
+
+    private void reportOutcome(long start, boolean failed) {
+        if(breaker != null) {
+            breaker.onResult(System.nanoTime() - start, failed);
+            breaker = null;
+        }
+    }
+
+    private void reportCancelled() {
+        if(breaker != null) {
+            breaker.onCancelled();
+            breaker = null;
+        }
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        connect();
+        return responseCode;
+    }
+
+    /**
+     * Like HttpURLConnection, throws for error statuses. Their bodies
+     * aren't used, so they're closed straight away rather than leaving
+     * that to callers, who don't expect to have to.
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        connect();
+        if(responseCode >= 400) {
+            disconnect();
+            if(responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+                throw new FileNotFoundException(getURL().toString());
+            }
+            throw new IOException(String.format("Server returned HTTP response code: %d for URL: %s", responseCode, getURL()));
+        }
+        return body;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return response != null ? response.headers().firstValue(name).orElse(null) : null;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        return response != null ? response.headers().map() : super.getHeaderFields();
+    }
+
+    @Override
+    public void disconnect() {
+        if(body != null) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        // never connected, e.g. because the deadline had already passed
+        reportCancelled();
+    }
+
+    /**
+     * The response body, with a timeout on each read. Reports the request's
+     * outcome to the breaker once it's read to the end, closed, or times out.
+     *
+     * Reads happen on the caller's thread. A single watchdog task per body
+     * checks on them: if one has been blocked for longer than the timeout,
+     * it closes the body and interrupts the reader, which then throws
+     * SocketTimeoutException.
+     */
+    private class ResponseBody extends FilterInputStream {
+
+        private final long timeoutNanos;
+
+        // guarded by this
+        private Thread reader;
+        private long readingSince;
+        private boolean timedOut = false;
+        private boolean done = false;
+        private ScheduledFuture<?> watchdog;
+
+        ResponseBody(InputStream in, int readTimeout) {
+            super(in);
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeout);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n > 0 ? b[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            synchronized (this) {
+                if(timedOut) {
+                    throw new SocketTimeoutException("Timed out reading response from " + getURL());
+                }
+                reader = Thread.currentThread();
+                readingSince = System.nanoTime();
+                if(watchdog == null && !done) {
+                    watchdog = WATCHDOG.schedule(this::check, timeoutNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (IOException e) {
+                if(endRead()) {
+                    throw timeout();
+                }
+                finish();
+                if(Thread.currentThread().isInterrupted()) {
+                    reportCancelled();
+                } else {
+                    reportOutcome(start, true);
+                }
+                throw e;
+            }
+            if(endRead()) {
+                throw timeout();
+            }
+            if(n < 0) {
+                finish();
+                reportOutcome(start, false);
+            }
+            return n;
+        }
+
+        /**
+         * @return true if the watchdog timed out the read that just ended;
+         * its interrupt is cleared, since it was only meant for that read
+         */
+        private synchronized boolean endRead() {
+            reader = null;
+            if(timedOut) {
+                Thread.interrupted();
+                return true;
+            }
+            return false;
+        }
+
+        private SocketTimeoutException timeout() {
+            finish();
+            reportOutcome(start, true);
+            return new SocketTimeoutException("Timed out reading response from " + getURL());
+        }
+
+        /**
+         * Run by the watchdog: times out a read that's been blocked too long,
+         * or checks again when the current one would.
+         */
+        private void check() {
+            synchronized (this) {
+                if(done) {
+                    return;
+                }
+                long now = System.nanoTime();
+                if(reader == null || now - readingSince < timeoutNanos) {
+                    long delay = reader != null ? readingSince + timeoutNanos - now : timeoutNanos;
+                    watchdog = WATCHDOG.schedule(this::check, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                timedOut = true;
+                done = true;
+                // while holding the lock, so the interrupt can't outlive the read
+                reader.interrupt();
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        private synchronized void finish() {
+            done = true;
+            if(watchdog != null) {
+                watchdog.cancel(false);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // FilterInputStream would skip on the underlying stream, without a timeout
+            byte[] b = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while(skipped < n) {
+                int read = read(b, 0, (int) Math.min(b.length, n - skipped));
+                if(read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            // closed early by the caller; it got what it wanted
+            reportOutcome(start, false);
+            super.close();
+        }
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.SearchResult;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed search should be tried again.
+ *
+ * Delays grow exponentially with each attempt, with jitter so that
+ * a batch of failures doesn't come back all at once, and never come
+ * sooner than the upstream's Retry-After header asks for.
+ *
+ * Retries are also limited by a budget that's shared by all the searches
+ * for a data source: each first attempt deposits a fraction of a token,
+ * each retry withdraws a whole one. When an upstream is failing
+ * everything, this keeps us from multiplying the load we put on it.
+ */
+public class RetryPolicy {
+
+    public static final String PROP_MAX_ATTEMPTS = "retry.max.attempts";
+    public static final String PROP_BACKOFF_INITIAL_MS = "retry.backoff.initial.ms";
+    public static final String PROP_BACKOFF_MAX_MS = "retry.backoff.max.ms";
+    public static final String PROP_RETRY_AFTER_MAX_MS = "retry.after.max.ms";
+    public static final String PROP_BUDGET_RATIO = "retry.budget.ratio";
+    public static final String PROP_BUDGET_MAX = "retry.budget.max";
+
+    // total number of tries for a query, including the first
+    private int maxAttempts = 2;
+    private long backoffInitialMs = 1000;
+    private long backoffMaxMs = 10000;
+    // don't honor Retry-After values longer than this; give up instead
+    private long retryAfterMaxMs = 10000;
+
+    private double budgetRatio = 0.2;
+    private double budgetMax = 20;
+    private double budget = budgetMax;
+
+    public RetryPolicy() {
+    }
+
+    /**
+     * @param props data source properties, see PROP_* constants for keys
+     */
+    public RetryPolicy(Properties props) {
+        maxAttempts = Integer.parseInt(props.getProperty(PROP_MAX_ATTEMPTS, String.valueOf(maxAttempts)));
+        backoffInitialMs = Long.parseLong(props.getProperty(PROP_BACKOFF_INITIAL_MS, String.valueOf(backoffInitialMs)));
+        backoffMaxMs = Long.parseLong(props.getProperty(PROP_BACKOFF_MAX_MS, String.valueOf(backoffMaxMs)));
+        retryAfterMaxMs = Long.parseLong(props.getProperty(PROP_RETRY_AFTER_MAX_MS, String.valueOf(retryAfterMaxMs)));
+        budgetRatio = Double.parseDouble(props.getProperty(PROP_BUDGET_RATIO, String.valueOf(budgetRatio)));
+        budgetMax = Double.parseDouble(props.getProperty(PROP_BUDGET_MAX, String.valueOf(budgetMax)));
+        budget = budgetMax;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public synchronized double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Called for every first attempt of a search, to replenish the budget.
+     */
+    public synchronized void recordFirstAttempt() {
+        budget = Math.min(budgetMax, budget + budgetRatio);
+    }
+
+    /**
+     * @return whether a search that failed this way can be retried at all
+     */
+    public static boolean isRetryable(SearchResult.ErrorType errorType) {
+        return errorType != null
+                && errorType != SearchResult.ErrorType.CLIENT_ERROR
+                && errorType != SearchResult.ErrorType.DEADLINE_EXCEEDED
+                && errorType != SearchResult.ErrorType.CACHED_ERROR
+                && errorType != SearchResult.ErrorType.CIRCUIT_OPEN
+                && errorType != SearchResult.ErrorType.CANCELLED;
+    }
+
+    /**
+     * Decides whether to retry a failed search, withdrawing from the budget if so.
+     *
+     * @param result the failed result
+     * @param attempts number of attempts made so far, including the one that produced result
+     * @return ms to wait before retrying, or -1 to give up
+     */
+    public long getRetryDelay(SearchResult result, int attempts) {
+        if(result.isSuccessful() || !isRetryable(result.getErrorType()) || attempts >= maxAttempts) {
+            return -1;
+        }
+        if(result.getRetryAfterMs() > retryAfterMaxMs) {
+            return -1;
+        }
+        synchronized (this) {
+            if(budget < 1) {
+                return -1;
+            }
+            budget -= 1;
+        }
+        return Math.max(result.getRetryAfterMs(), getBackoff(attempts));
+    }
+
+    /**
+     * "Equal jitter" exponential backoff: somewhere between half and all
+     * of the exponential delay for this attempt.
+     */
+    long getBackoff(int attempts) {
+        long delay = backoffInitialMs;
+        for(int i = 1; i < attempts && delay < backoffMaxMs; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, backoffMaxMs);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+}
@@ -0,0 +1,295 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.SearchResult;
+import com.codefork.refine.StringUtil;
+import com.codefork.refine.concurrency.ClientContext;
+import org.apache.commons.logging.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a set of queries on a WebServiceDataSource's thread pool.
+ *
+ * Each task is handled independently as it completes: a failed task
+ * is re-submitted on its own, after the delay given by the data source's
+ * RetryPolicy, without waiting for the rest of the batch.
+ *
+ * If the batch has a deadline, keys without a result when it passes get
+ * DEADLINE_EXCEEDED results, and their tasks are cancelled if they haven't
+ * started yet. Running tasks aren't interrupted: a task may be the leader
+ * that other batches' searches for the same query are waiting on (see
+ * SingleFlight), and they'd all get the interrupt as their result. The
+ * deadline already limits how long their upstream requests can take.
+ * A batch can also be cancelled, which cuts off unfinished keys the same way.
+ */
+class SearchBatch {
+
+    // only schedules re-submissions and deadlines; the searches themselves run in the data source's pool
+    private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "search-retry-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final WebServiceDataSource dataSource;
+    private final RetryPolicy retryPolicy;
+    private final Log log;
+
+    private final Map<String, SearchQuery> queries;
+    private final Consumer<SearchResult> listener;
+    private final Deadline deadline;
+    // who the tasks are for, so retries submitted from other threads are attributed correctly
+    private final ClientContext clientContext;
+
+    private final Map<String, Integer> attempts = new HashMap<>();
+    private final Map<String, Future<?>> running = new HashMap<>();
+    // keys with a final result; the results themselves only go to the listener,
+    // so a batch doesn't hold on to all of them until it's done
+    private final Set<String> completed = new HashSet<>();
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private int retryCount = 0;
+    private int delivered = 0;
+    private boolean expired = false;
+    private ScheduledFuture<?> deadlineTimer;
+
+    /**
+     * @param queries map of keys => queries; keys should be unique
+     */
+    SearchBatch(WebServiceDataSource dataSource, Map<String, SearchQuery> queries) {
+        this(dataSource, queries, result -> {}, Deadline.NONE);
+    }
+
+    /**
+     * @param queries map of keys => queries; keys should be unique
+     * @param listener called with each final result as soon as it's available,
+     *                 on whatever thread produced it
+     * @param deadline time by which all results are needed
+     */
+    SearchBatch(WebServiceDataSource dataSource, Map<String, SearchQuery> queries,
+                Consumer<SearchResult> listener, Deadline deadline) {
+        this.dataSource = dataSource;
+        this.retryPolicy = dataSource.getRetryPolicy();
+        this.log = dataSource.getLog();
+        this.queries = queries;
+        this.listener = listener;
+        this.deadline = deadline;
+        // a lone query is probably someone waiting on it interactively
+        this.clientContext = ClientContext.current().withInteractive(queries.size() == 1);
+    }
+
+    /**
+     * Submits all the queries.
+     * @return future that completes when every query has a final result
+     */
+    CompletableFuture<Void> start() {
+        if(queries.isEmpty()) {
+            future.complete(null);
+            return future;
+        }
+        if(deadline.isSet()) {
+            ScheduledFuture<?> timer = retryScheduler.schedule(this::expire, deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                deadlineTimer = timer;
+            }
+        }
+        for(Map.Entry<String, SearchQuery> entry : queries.entrySet()) {
+            retryPolicy.recordFirstAttempt();
+            submit(entry.getKey(), entry.getValue());
+        }
+        return future;
+    }
+
+    /**
+     * @return number of times tasks in this batch were retried
+     */
+    synchronized int getRetryCount() {
+        return retryCount;
+    }
+
+    private void submit(String key, SearchQuery searchQuery) {
+        SearchTask task = dataSource.createSearchTask(key, searchQuery);
+        task.setDeadline(deadline);
+        synchronized (this) {
+            if(expired) {
+                return;
+            }
+            attempts.merge(key, 1, Integer::sum);
+        }
+        ClientContext previousContext = ClientContext.current();
+        ClientContext.set(clientContext);
+        Future<?> f;
+        try {
+            f = dataSource.getThreadPool().submit(() -> {
+                SearchResult result;
+                try {
+                    result = task.call();
+                } catch (Exception e) {
+                    log.error("SearchBatch: error running task: " + StringUtil.getStackTrace(e));
+                    result = new SearchResult(key, SearchResult.ErrorType.UNKNOWN);
+                } catch (Error e) {
+                    // the key still needs a result, or the batch would never complete
+                    complete(new SearchResult(key, SearchResult.ErrorType.UNKNOWN));
+                    throw e;
+                }
+                onResult(result);
+                return result;
+            });
+        } catch (RejectedExecutionException e) {
+            // e.g. the pool is shutting down; retrying wouldn't help
+            log.error("SearchBatch: couldn't submit task: " + e);
+            complete(new SearchResult(key, SearchResult.ErrorType.UNKNOWN));
+            return;
+        } finally {
+            ClientContext.set(previousContext);
+        }
+        boolean cancel;
+        synchronized (this) {
+            // don't hold on to the future if the task already finished or the deadline passed
+            cancel = expired && !completed.contains(key);
+            if(!cancel && !completed.contains(key)) {
+                running.put(key, f);
+            }
+        }
+        if(cancel) {
+            f.cancel(false);
+        }
+    }
+
+    private void onResult(SearchResult result) {
+        String key = result.getKey();
+
+        if(!result.isSuccessful()) {
+            if (SearchResult.ErrorType.TOO_MANY_REQUESTS.equals(result.getErrorType())) {
+                dataSource.getThreadPool().shrink();
+            }
+
+            int attemptsSoFar;
+            synchronized (this) {
+                if(completed.contains(key)) {
+                    return;
+                }
+                attemptsSoFar = attempts.get(key);
+            }
+            long delay = retryPolicy.getRetryDelay(result, attemptsSoFar);
+            if(delay >= 0 && delay < deadline.remainingMillis()) {
+                SearchQuery searchQuery = queries.get(key);
+                log.info(String.format("Retrying query in %d ms: %s", delay, searchQuery.getQuery()));
+                synchronized (this) {
+                    retryCount++;
+                }
+                retryScheduler.schedule(() -> submit(key, searchQuery), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+
+        complete(result);
+    }
+
+    /**
+     * Records result as the final one for its key, and passes it on.
+     */
+    private void complete(SearchResult result) {
+        String key = result.getKey();
+        synchronized (this) {
+            // the deadline may have already given this key a result
+            if(completed.contains(key)) {
+                return;
+            }
+            completed.add(key);
+            running.remove(key);
+        }
+        deliver(result);
+    }
+
+    /**
+     * Gives every key that doesn't have a result yet a DEADLINE_EXCEEDED one,
+     * and cancels their tasks, if they haven't started.
+     */
+    private void expire() {
+        int cutOff = cutOff(SearchResult.ErrorType.DEADLINE_EXCEEDED);
+        if(cutOff > 0) {
+            log.info(String.format("Deadline passed with %d of %d queries unfinished", cutOff, queries.size()));
+        }
+    }
+
+    /**
+     * Stops the batch early, e.g. because nobody's waiting for its results
+     * anymore: keys without a result get CANCELLED ones, and their tasks
+     * are cancelled if they haven't started. As with the deadline, running
+     * tasks are left to finish.
+     */
+    void cancel() {
+        int cutOff = cutOff(SearchResult.ErrorType.CANCELLED);
+        if(cutOff > 0) {
+            log.info(String.format("Cancelled with %d of %d queries unfinished", cutOff, queries.size()));
+        }
+    }
+
+    /**
+     * Gives every key without a result one with the given error type,
+     * and cancels their tasks, if they haven't started.
+     * @return number of keys that were cut off
+     */
+    private int cutOff(SearchResult.ErrorType errorType) {
+        List<SearchResult> cutOff = new ArrayList<>();
+        List<Future<?>> toCancel = new ArrayList<>();
+        synchronized (this) {
+            expired = true;
+            for(String key : queries.keySet()) {
+                if(!completed.contains(key)) {
+                    completed.add(key);
+                    cutOff.add(new SearchResult(key, errorType));
+                    Future<?> f = running.remove(key);
+                    if(f != null) {
+                        toCancel.add(f);
+                    }
+                }
+            }
+        }
+        for(Future<?> f : toCancel) {
+            f.cancel(false);
+        }
+        for(SearchResult result : cutOff) {
+            deliver(result);
+        }
+        return cutOff.size();
+    }
+
+    private void deliver(SearchResult result) {
+        try {
+            listener.accept(result);
+        } catch (Exception e) {
+            log.error("SearchBatch: error in listener: " + StringUtil.getStackTrace(e));
+        }
+
+        boolean done;
+        ScheduledFuture<?> timer;
+        synchronized (this) {
+            delivered++;
+            done = delivered == queries.size();
+            timer = deadlineTimer;
+        }
+        if(done) {
+            if(timer != null) {
+                timer.cancel(false);
+            }
+            future.complete(null);
+        }
+    }
+
+}
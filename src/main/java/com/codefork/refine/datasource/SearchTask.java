@@ -12,5 +12,11 @@ public interface SearchTask extends Callable<SearchResult> {
 
     SearchQuery getSearchQuery();
 
+    /**
+     * Sets the time by which this task's result is needed; tasks should
+     * give up rather than start work they can't finish in time.
+     */
+    void setDeadline(Deadline deadline);
+
     SearchResult call();
 }
@@ -0,0 +1,20 @@
+package com.codefork.refine.datasource;
+
+/**
+ * Thrown when a data source is too backed up to take on more queries;
+ * clients get an HTTP 503 and should try again later.
+ */
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.codefork.refine.datasource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces concurrent calls for the same key so that only one of them
+ * (the "leader") does the actual work; all other callers that arrive while
+ * the leader is still running wait for it and get the same value, or the
+ * same exception.
+ *
+ * Nothing is remembered once the leader finishes: this is not a cache,
+ * it only de-duplicates work that is in flight.
+ *
+ * Callers that wait only wait until their own Deadline, if they have one,
+ * since the leader may be working to a later one.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs loader for key, unless another thread is already running it,
+     * in which case this waits for and returns that thread's result.
+     *
+     * @throws DeadlineExceededException if this thread's deadline passes
+     * while waiting for another thread's result
+     */
+    public V execute(K key, Callable<V> loader) throws Exception {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if(existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V value = loader.call();
+            future.complete(value);
+            return value;
+        } catch(Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return number of keys currently being loaded
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future) throws Exception {
+        Deadline deadline = Deadline.current();
+        try {
+            if(deadline.isSet()) {
+                return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            }
+            return future.get();
+        } catch(TimeoutException e) {
+            throw new DeadlineExceededException();
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+}
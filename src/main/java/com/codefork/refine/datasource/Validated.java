@@ -0,0 +1,29 @@
+package com.codefork.refine.datasource;
+
+/**
+ * A value fetched from upstream, with the validators of the response it
+ * came from (see WebServiceDataSource.fetchConditionally()).
+ */
+public class Validated<T> {
+
+    private final T value;
+    private final Validators validators;
+
+    public Validated(T value, Validators validators) {
+        this.value = value;
+        this.validators = validators;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return validators, or null if the response didn't have any, or
+     * the value was made from more than one response
+     */
+    public Validators getValidators() {
+        return validators;
+    }
+
+}
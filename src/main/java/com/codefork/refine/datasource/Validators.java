@@ -0,0 +1,37 @@
+package com.codefork.refine.datasource;
+
+import java.io.Serializable;
+
+/**
+ * The ETag and Last-Modified headers of an upstream response, kept with
+ * what was cached from it so that a later request for the same thing can
+ * ask the server to answer 304 Not Modified if it hasn't changed.
+ */
+public class Validators implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String etag;
+    private final String lastModified;
+
+    public Validators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return validators from the response's headers, or null if it has neither
+     */
+    public static Validators of(String etag, String lastModified) {
+        return etag != null || lastModified != null ? new Validators(etag, lastModified) : null;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+}
@@ -7,6 +7,12 @@ import com.codefork.refine.SearchResult;
 import com.codefork.refine.StringUtil;
 import com.codefork.refine.ThreadPool;
 import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.cache.CacheKey;
+import com.codefork.refine.concurrency.CircuitOpenException;
+import com.codefork.refine.concurrency.ClientContext;
+import com.codefork.refine.concurrency.CoDelAdmission;
+import com.codefork.refine.concurrency.ConcurrencyLimit;
+import com.codefork.refine.concurrency.ConcurrencyLimits;
 import com.codefork.refine.datasource.stats.CounterType;
 import com.codefork.refine.datasource.stats.Interval;
 import com.codefork.refine.datasource.stats.Stats;
@@ -15,14 +21,28 @@ import com.codefork.refine.resources.SearchResponse;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * A data source that queries a web service API using a threadpool
@@ -32,6 +52,19 @@ public abstract class WebServiceDataSource extends DataSource {
 
     public static final boolean DEFAULT_CACHE_ENABLED = false;
 
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // thread pool settings; these can be set for a data source,
+    // or for all of them with a "threadpool." prefix
+    public static final String PROP_QUEUE_CAPACITY = "queue.capacity";
+    public static final String PROP_SHED_TARGET_MS = "shed.target.ms";
+    public static final String PROP_SHED_INTERVAL_MS = "shed.interval.ms";
+
+    // refreshed cache entries are queued as coming from this client
+    private static final ClientContext CACHE_REFRESH_CONTEXT = new ClientContext("cache-refresh", false);
+
     private boolean cacheEnabled = DEFAULT_CACHE_ENABLED;
 
     private CacheManager cacheManager;
@@ -42,6 +75,40 @@ public abstract class WebServiceDataSource extends DataSource {
 
     private ConnectionFactory connectionFactory;
 
+    private RetryPolicy retryPolicy;
+
+    private HedgingPolicy hedgingPolicy;
+
+    // max time for a call to search(), 0 for no limit
+    private long requestDeadlineMs = 0;
+
+    // whether to ask upstream services for compressed responses
+    private boolean compressionEnabled = true;
+
+    // cache entries older than this are served but refreshed in the background; 0 to disable
+    private long cacheSoftTtlMs = 0;
+    // entries hit this close to going stale (or expiring) are refreshed ahead of time; 0 to disable
+    private long cacheRefreshAheadMs = 0;
+    private int cacheRefreshAheadHits = 3;
+    // searches with limits up to this are run with this limit and cached for all of them; 0 to disable
+    private int cacheFetchLimit = 0;
+    private long cacheTtlMs;
+    // how long to cache searches that found nothing; 0 for the same as other results
+    private long cacheEmptyTtlMs = 0;
+    // how long to cache upstream errors; 0 to not cache them
+    private long cacheErrorTtlMs = 0;
+    // how long past the TTL to keep results that can be revalidated; 0 to not keep them
+    private long cacheRevalidateMs = 0;
+
+    // the conditional request for the search running on this thread, if any
+    private static final ThreadLocal<ConditionalRequest> conditionalRequest = new ThreadLocal<>();
+
+    // de-duplicates upstream searches for identical queries that are in flight
+    private final SingleFlight<CacheKey, CachedResults> singleFlight = new SingleFlight<>();
+
+    // cache keys with a background refresh queued or running
+    private final Set<CacheKey> refreshing = ConcurrentHashMap.newKeySet();
+
     public WebServiceDataSource(
             Config config,
             CacheManager cacheManager,
@@ -55,10 +122,52 @@ public abstract class WebServiceDataSource extends DataSource {
 
         this.threadPool = createThreadPool();
 
+        // pools shared by several data sources only get one limit
+        if(threadPool.getConcurrencyLimit() == null) {
+            String defaultAlgorithm = config.getProperties().getProperty(
+                    Config.PROP_THREADPOOL_LIMIT_ALGORITHM, ConcurrencyLimits.ALGORITHM_NONE);
+            ConcurrencyLimit limit = ConcurrencyLimits.create(getConfigProperties(), defaultAlgorithm,
+                    threadPool.getPoolSize(), getDefaultMaxConcurrency());
+            if(limit != null) {
+                threadPool.setConcurrencyLimit(limit);
+            }
+        }
+
+        threadPool.setMaxQueueSize(Integer.parseInt(getThreadPoolProperty(PROP_QUEUE_CAPACITY, "0")));
+        long shedTargetMs = Long.parseLong(getThreadPoolProperty(PROP_SHED_TARGET_MS, "0"));
+        if(shedTargetMs > 0 && threadPool.getAdmission() == null) {
+            long shedIntervalMs = Long.parseLong(getThreadPoolProperty(PROP_SHED_INTERVAL_MS, "1000"));
+            threadPool.setAdmission(new CoDelAdmission(shedTargetMs, shedIntervalMs));
+        }
+
+        this.retryPolicy = new RetryPolicy(getConfigProperties());
+        this.hedgingPolicy = new HedgingPolicy(getConfigProperties());
+
+        this.requestDeadlineMs = Long.parseLong(getConfigProperties().getProperty(Config.PROP_REQUEST_DEADLINE_MS,
+                config.getProperties().getProperty(Config.PROP_REQUEST_DEADLINE_MS, "0")));
+
+        this.compressionEnabled = Boolean.parseBoolean(getConfigProperties().getProperty(Config.PROP_HTTP_COMPRESSION,
+                config.getProperties().getProperty(Config.PROP_HTTP_COMPRESSION, "true")));
+
         Properties props = getConfig().getProperties();
         if(props.containsKey(Config.PROP_CACHE_ENABLED)) {
             setCacheEnabled(Boolean.valueOf(props.getProperty(Config.PROP_CACHE_ENABLED)));
         }
+        this.cacheTtlMs = Long.parseLong(props.getProperty(Config.PROP_CACHE_TTL, "3600")) * 1000;
+        this.cacheSoftTtlMs = Long.parseLong(getConfigProperties().getProperty(Config.PROP_CACHE_TTL_SOFT,
+                props.getProperty(Config.PROP_CACHE_TTL_SOFT, "0"))) * 1000;
+        this.cacheEmptyTtlMs = Long.parseLong(getConfigProperties().getProperty(Config.PROP_CACHE_TTL_EMPTY,
+                props.getProperty(Config.PROP_CACHE_TTL_EMPTY, "0"))) * 1000;
+        this.cacheErrorTtlMs = Long.parseLong(getConfigProperties().getProperty(Config.PROP_CACHE_TTL_ERROR,
+                props.getProperty(Config.PROP_CACHE_TTL_ERROR, "0"))) * 1000;
+        this.cacheRevalidateMs = Long.parseLong(getConfigProperties().getProperty(Config.PROP_CACHE_TTL_REVALIDATE,
+                props.getProperty(Config.PROP_CACHE_TTL_REVALIDATE, "0"))) * 1000;
+        this.cacheFetchLimit = Integer.parseInt(getConfigProperties().getProperty(Config.PROP_CACHE_FETCH_LIMIT,
+                props.getProperty(Config.PROP_CACHE_FETCH_LIMIT, "0")));
+        this.cacheRefreshAheadMs = Long.parseLong(getConfigProperties().getProperty(Config.PROP_CACHE_REFRESH_AHEAD,
+                props.getProperty(Config.PROP_CACHE_REFRESH_AHEAD, "0"))) * 1000;
+        this.cacheRefreshAheadHits = Integer.parseInt(getConfigProperties().getProperty(Config.PROP_CACHE_REFRESH_AHEAD_HITS,
+                props.getProperty(Config.PROP_CACHE_REFRESH_AHEAD_HITS, "3")));
    }
 
     public boolean isCacheEnabled() {
@@ -77,6 +186,57 @@ public abstract class WebServiceDataSource extends DataSource {
         return cacheManager;
     }
 
+    public long getCacheSoftTtlMs() {
+        return cacheSoftTtlMs;
+    }
+
+    /**
+     * @param cacheSoftTtlMs age after which cached results are refreshed
+     *                       in the background while still being served;
+     *                       should be less than cache.ttl. 0 to disable
+     */
+    public void setCacheSoftTtlMs(long cacheSoftTtlMs) {
+        this.cacheSoftTtlMs = cacheSoftTtlMs;
+    }
+
+    public long getCacheErrorTtlMs() {
+        return cacheErrorTtlMs;
+    }
+
+    /**
+     * @param cacheErrorTtlMs how long a failed search is remembered, so the
+     *                        same query isn't sent upstream again in the
+     *                        meantime. 0 to disable
+     */
+    public void setCacheErrorTtlMs(long cacheErrorTtlMs) {
+        this.cacheErrorTtlMs = cacheErrorTtlMs;
+    }
+
+    public int getCacheFetchLimit() {
+        return cacheFetchLimit;
+    }
+
+    /**
+     * @param cacheFetchLimit limit to run searches with, so that results can be
+     *                        cached for queries with any limit up to it. 0 to disable
+     */
+    public void setCacheFetchLimit(int cacheFetchLimit) {
+        this.cacheFetchLimit = cacheFetchLimit;
+    }
+
+    public long getCacheRefreshAheadMs() {
+        return cacheRefreshAheadMs;
+    }
+
+    /**
+     * @param cacheRefreshAheadMs how long before cached results go stale
+     *                            (or expire, without a soft TTL) that popular
+     *                            ones get refreshed. 0 to disable
+     */
+    public void setCacheRefreshAheadMs(long cacheRefreshAheadMs) {
+        this.cacheRefreshAheadMs = cacheRefreshAheadMs;
+    }
+
     protected ThreadPoolFactory getThreadPoolFactory() {
         return threadPoolFactory;
     }
@@ -93,6 +253,60 @@ public abstract class WebServiceDataSource extends DataSource {
         return threadPool;
     }
 
+    /**
+     * @return value of a thread pool setting for this data source, falling
+     * back to the "threadpool." setting for all data sources
+     */
+    private String getThreadPoolProperty(String key, String defaultValue) {
+        return getConfigProperties().getProperty(key,
+                getConfig().getProperties().getProperty("threadpool." + key, defaultValue));
+    }
+
+    /**
+     * Upper bound for the thread pool size when an adaptive concurrency limit
+     * is used and the config doesn't give one. Subclasses for services
+     * that are known to be touchy should override this.
+     */
+    protected int getDefaultMaxConcurrency() {
+        return ThreadPool.MAX_POOL_SIZE;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public long getRequestDeadlineMs() {
+        return requestDeadlineMs;
+    }
+
+    /**
+     * @param requestDeadlineMs max time for a set of queries to run; queries
+     *                          that haven't finished by then get empty results.
+     *                          0 means no limit.
+     */
+    public void setRequestDeadlineMs(long requestDeadlineMs) {
+        this.requestDeadlineMs = requestDeadlineMs;
+    }
 
     public ConnectionFactory getConnectionFactory() {
         return connectionFactory;
@@ -127,157 +341,497 @@ public abstract class WebServiceDataSource extends DataSource {
      * This is the main entry point for running a set of queries.
      * Web app controllers use this.
      *
-     * It makes use of the threadpool, shrinking/growing it as necessary
-     * in response to HTTP 429 responses from VIAF, and retrying those
-     * requests.
-     *
      * @param queryEntries map of string ids (e.g. q0, q1, as identified by OpenRefine clients)
      *                     => SearchQuery objects
      * @return map of string ids => SearchResult objects
      */
     @Override
     public Map<String, SearchResponse> search(Map<String, SearchQuery> queryEntries) {
-        long start = System.currentTimeMillis();
+        Map<String, SearchResponse> allResults = new ConcurrentHashMap<>();
+        search(queryEntries, allResults::put);
+        return new HashMap<>(allResults);
+    }
 
-        Map<String, SearchResponse> allResults = new HashMap<>();
+    /**
+     * Blocking version of searchAsync(Map, BiConsumer).
+     */
+    @Override
+    public void search(Map<String, SearchQuery> queryEntries, BiConsumer<String, SearchResponse> consumer) {
+        searchAsync(queryEntries, consumer).join();
+    }
 
-        Map<String, SearchResult> results = searchUsingThreadPool(queryEntries);
+    /**
+     * Runs a set of queries, passing each response to the consumer as soon
+     * as it's ready. This returns right away; no thread waits on the searches,
+     * the returned future is completed by whichever one finishes last.
+     *
+     * It makes use of the threadpool, shrinking/growing it as necessary
+     * in response to HTTP 429 responses from VIAF. Failed queries are retried
+     * individually, as soon as they fail, according to the RetryPolicy.
+     *
+     * Queries in the set that are identical, properties included (per
+     * SearchQuery.getHashKey()), are only run once; their result is shared
+     * by all the keys that asked for it.
+     *
+     * Searches that fail get empty responses, as do searches that are still
+     * running when the request deadline (if any) passes.
+     *
+     * @throws ServiceOverloadedException if the thread pool's queue is full
+     * or backed up; none of the queries are run in that case
+     *
+     * @param queryEntries map of string ids => SearchQuery objects
+     * @param consumer called from the threadpool with each id and its response
+     * @return future that completes once every id has been passed to the consumer;
+     * cancelling it cancels the searches that haven't started yet
+     */
+    @Override
+    public CompletableFuture<Void> searchAsync(Map<String, SearchQuery> queryEntries, BiConsumer<String, SearchResponse> consumer) {
+        long start = System.currentTimeMillis();
+        Deadline deadline = Deadline.after(getRequestDeadlineMs());
 
-        // adjust thread pool if necessary on unsuccessful results
-        for(Map.Entry<String, SearchResult> queryEntry : results.entrySet()) {
-            SearchResult searchResult = queryEntry.getValue();
-            if(!searchResult.isSuccessful()) {
-                if (SearchResult.ErrorType.TOO_MANY_REQUESTS.equals(searchResult.getErrorType())) {
-                    getThreadPool().shrink();
-                }
+        // hash key => index keys of all the queries in this set that have that hash key
+        Map<String, List<String>> indexKeysByHashKey = new LinkedHashMap<>();
+        // the first index key for a hash key stands in for all of them
+        Map<String, SearchQuery> uniqueQueries = new LinkedHashMap<>();
+        for(Map.Entry<String, SearchQuery> queryEntry : queryEntries.entrySet()) {
+            String hashKey = queryEntry.getValue().getHashKey();
+            List<String> indexKeys = indexKeysByHashKey.computeIfAbsent(hashKey, k -> new ArrayList<>());
+            if(indexKeys.isEmpty()) {
+                uniqueQueries.put(queryEntry.getKey(), queryEntry.getValue());
             }
+            indexKeys.add(queryEntry.getKey());
         }
 
-        // figure out which queries need to be done again
-        Map<String, SearchQuery> secondTries = new HashMap<>();
-        for(Map.Entry<String, SearchQuery> queryEntry : queryEntries.entrySet()) {
-            String indexKey = queryEntry.getKey();
-            if(!results.containsKey(indexKey)) {
-                SearchQuery searchQuery = queryEntry.getValue();
-                log.info("Submitting second try for query: " + searchQuery.getQuery());
-                secondTries.put(indexKey, searchQuery);
-            }
+        if(uniqueQueries.size() < queryEntries.size()) {
+            log.debug(String.format("Coalesced %s queries into %s tasks", queryEntries.size(), uniqueQueries.size()));
+        }
+
+        if(!getThreadPool().tryAdmit(uniqueQueries.size())) {
+            getStats().getCurrentInterval().add(CounterType.SHED, queryEntries.size());
+            long retryAfterSeconds = Math.max(1, (getThreadPool().getAverageWaitMs() + 999) / 1000);
+            throw new ServiceOverloadedException(
+                    String.format("%s is overloaded (%d queries waiting), try again later",
+                            getName(), getThreadPool().getQueueSize()),
+                    retryAfterSeconds);
         }
 
-        if(secondTries.size() > 0) {
-            // sleep a bit, avoid doing second tries immediately
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger deadlineExceeded = new AtomicInteger();
+        Set<String> emitted = ConcurrentHashMap.newKeySet();
+
+        SearchBatch batch = new SearchBatch(this, uniqueQueries, result -> {
+            String hashKey = uniqueQueries.get(result.getKey()).getHashKey();
+            List<String> indexKeys = indexKeysByHashKey.get(hashKey);
+            if(!result.isSuccessful()) {
+                errors.addAndGet(indexKeys.size());
+                if(SearchResult.ErrorType.DEADLINE_EXCEEDED.equals(result.getErrorType())) {
+                    deadlineExceeded.addAndGet(indexKeys.size());
+                }
+            }
+            // return empty arrays for searches that didn't complete due to errors
+            List<Result> results = result.isSuccessful() ? result.getResults() : new ArrayList<>();
+            for(String indexKey : indexKeys) {
+                if(emitted.add(indexKey)) {
+                    consumer.accept(indexKey, new SearchResponse(new ArrayList<>(results)));
+                }
+            }
+        }, deadline);
+        CompletableFuture<Void> finished = batch.start().thenRun(() -> {
+            // anything that never completed also gets an empty response
+            for(String indexKey : queryEntries.keySet()) {
+                if(emitted.add(indexKey)) {
+                    errors.incrementAndGet();
+                    consumer.accept(indexKey, new SearchResponse(new ArrayList<>()));
+                }
+            }
+
             try {
-                Thread.sleep(1500);
-            } catch(InterruptedException e) {
-                log.error("sleep interrupted before doing second tries");
+                updateStats(queryEntries.size(), errors.get(), batch.getRetryCount(), deadlineExceeded.get());
+            } catch(Exception e) {
+                log.error("error in updateStats(), ignoring and continuing: " + StringUtil.getStackTrace(e));
             }
 
-            // second tries
-            Map<String, SearchResult> resultsFromSecondTries = searchUsingThreadPool(secondTries);
+            log.debug(String.format("%s tasks finished in %s (thread pool size=%s)", queryEntries.size(), System.currentTimeMillis() - start, getThreadPool().getPoolSize()));
+        });
+        // a copy, so cancelling it cuts the batch short without skipping the stats above
+        CompletableFuture<Void> result = finished.copy();
+        result.whenComplete((v, t) -> {
+            if(result.isCancelled()) {
+                batch.cancel();
+            }
+        });
+        return result;
+    }
 
-            // merge into results
-            results.putAll(resultsFromSecondTries);
-        }
+    // TODO: remove throws when this is more solid
+    private void updateStats(int queries, int errors, int retries, int deadlineExceeded) throws Exception {
+        Interval interval = getStats().getCurrentInterval();
+        interval.add(CounterType.QUERIES, queries);
+        interval.add(CounterType.ERRORS, errors);
+        interval.add(CounterType.RETRIES, retries);
+        interval.add(CounterType.DEADLINE_EXCEEDED, deadlineExceeded);
 
-        // return empty arrays for searches that didn't complete due to errors
-        for(Map.Entry<String, SearchResult> queryEntry : results.entrySet()) {
-            String indexKey = queryEntry.getKey();
-            SearchResult searchResult = queryEntry.getValue();
-            if(searchResult.isSuccessful()) {
-                allResults.put(indexKey, new SearchResponse(searchResult.getResults()));
+        getStats().setThreadPoolSize(getThreadPool().getPoolSize());
+        getStats().setQueueSize(getThreadPool().getQueueSize());
+        getStats().setQueueWaitMs(getThreadPool().getAverageWaitMs());
+    }
+
+    /**
+     * Performs a search for a single query; this entry point checks the cache, if enabled.
+     * This is a "lower level" call than search(Map).
+     *
+     * Concurrent calls for the same query (from this batch or any other one
+     * running at the same time) share a single upstream search.
+     *
+     * Cache entries are shared by queries that differ only in case or
+     * whitespace (see SearchQuery.normalize()); results fetched for one
+     * are re-scored for the other with rescore(). If cache.fetch.limit is
+     * set, they're also shared by queries with different limits: searches
+     * are run with that limit, and the results cut down to the query's.
+     *
+     * Cached results past the soft TTL are returned as is, and refreshed
+     * in the background. So are results that keep getting hit shortly
+     * before they'd go stale.
+     *
+     * Results from upstream responses with an ETag or Last-Modified header
+     * are kept for cache.ttl.revalidate past the TTL. A search for them
+     * after the TTL (or a refresh) asks upstream whether they've changed,
+     * and if they haven't, they're kept for another TTL without fetching
+     * and parsing them again. If upstream can't be asked (an error, a
+     * timeout, an open circuit breaker), the stale results are returned.
+     *
+     * @param query search to perform
+     * @return list of search results (a 0-size list if none, or if errors occurred)
+     */
+    public List<Result> searchCheckCache(SearchQuery query) throws Exception {
+        boolean limitAgnostic = isLimitAgnostic(query);
+        SearchQuery fetchQuery = limitAgnostic ? query.withLimit(cacheFetchLimit) : query;
+        CacheKey key = getCacheKey(query);
+
+        CachedResults cached;
+        if (isCacheEnabled()) {
+            Cache cache = getCacheManager().getCache(Application.CACHE_DEFAULT);
+
+            Cache.ValueWrapper value = cache.get(key);
+
+            if(value != null && value.get() instanceof CachedResults) {
+                cached = (CachedResults) value.get();
+                log.info("Cache hit for: " + query.getQuery());
+                if(cached.isError()) {
+                    getStats().getCurrentInterval().add(CounterType.ERROR_CACHE_HITS, 1);
+                    throw new CachedErrorException();
+                }
+                if(cached.getValidators() != null && cached.getAgeMillis() >= cacheTtlMs) {
+                    // only kept past the TTL so it could be revalidated
+                    CachedResults previous = cached;
+                    try {
+                        cached = singleFlight.execute(key, () -> fetchAndCache(cache, key, fetchQuery, previous));
+                    } catch (Exception e) {
+                        // stale results beat none
+                        log.info("Couldn't revalidate cache entry, serving stale one: " + query.getQuery() + ": " + e);
+                        getStats().getCurrentInterval().add(CounterType.STALE_HITS, 1);
+                        if(e instanceof CircuitOpenException) {
+                            getStats().getCurrentInterval().add(CounterType.CIRCUIT_OPEN, 1);
+                        }
+                        cached = previous;
+                    }
+                    return fromCachedResults(query, cached, true);
+                }
+                if(cached.isEmpty()) {
+                    getStats().getCurrentInterval().add(CounterType.EMPTY_CACHE_HITS, 1);
+                }
+                if(shouldRefresh(cached)) {
+                    refreshInBackground(cache, key, fetchQuery, cached);
+                }
             } else {
-                allResults.put(indexKey, new SearchResponse(new ArrayList<>()));
+                List<Result> derived = searchOtherCacheEntries(query);
+                if(derived != null) {
+                    getStats().getCurrentInterval().add(CounterType.DERIVED_CACHE_HITS, 1);
+                    return derived;
+                }
+                cached = singleFlight.execute(key, () -> fetchAndCache(cache, key, fetchQuery, null));
             }
+        } else {
+            cached = singleFlight.execute(key, () -> fetch(fetchQuery, null));
         }
 
-        log.debug(String.format("%s tasks finished in %s (thread pool size=%s)", queryEntries.size(), System.currentTimeMillis() - start, getThreadPool().getPoolSize()));
+        return fromCachedResults(query, cached, true);
+    }
+
+    /**
+     * Fetches results for query (see fetch()) and caches them, or caches
+     * the error, if it's one worth caching and there's no previous entry
+     * that could be served instead.
+     */
+    private CachedResults fetchAndCache(Cache cache, CacheKey key, SearchQuery query, CachedResults previous) throws Exception {
+        CachedResults fetched;
+        try {
+            fetched = fetch(query, previous);
+        } catch (Exception e) {
+            if(previous == null && cacheErrorTtlMs > 0 && isCacheableError(e)) {
+                cache.put(key, CachedResults.error(cacheErrorTtlMs));
+            }
+            throw e;
+        }
+        cache.put(key, fetched);
+        return fetched;
+    }
 
-        return allResults;
+    /**
+     * Searches upstream. If previous has validators, the search is made
+     * conditional on them, and if upstream says nothing has changed,
+     * this returns previous renewed, without parsing anything.
+     */
+    private CachedResults fetch(SearchQuery query, CachedResults previous) throws Exception {
+        Validators validators = previous != null ? previous.getValidators() : null;
+        Validated<List<Result>> validated = fetchConditionally(validators, () -> searchAndSample(query));
+        if(validated == null) {
+            getStats().getCurrentInterval().add(CounterType.REVALIDATED, 1);
+            log.debug("Not modified upstream, renewed cache entry for: " + query.getQuery());
+            return previous.renewed();
+        }
+        return toCachedResults(query, validated.getValue(), validated.getValidators());
     }
 
     /**
-     * This method sends a single set of queries to the threadpool,
-     * waits for the futures to complete, and returns results.
+     * Runs fetch, adding If-None-Match and If-Modified-Since headers for
+     * validators (if not null) to the first request it opens with
+     * openInputStream(), and collecting the validators from the response.
      *
-     * @param queryEntries
-     * @return
+     * Only fetches that make a single request on the calling thread get
+     * validators: there'd be no telling which request to make conditional
+     * next time otherwise.
+     *
+     * @return the value fetch returned, with the response's validators;
+     * null if upstream answered 304 Not Modified
+     */
+    protected <T> Validated<T> fetchConditionally(Validators validators, Callable<T> fetch) throws Exception {
+        ConditionalRequest request = new ConditionalRequest(validators);
+        ConditionalRequest outer = conditionalRequest.get();
+        conditionalRequest.set(request);
+        try {
+            T value = fetch.call();
+            return new Validated<>(value, request.getResponseValidators());
+        } catch (NotModifiedException e) {
+            return null;
+        } finally {
+            if(outer != null) {
+                conditionalRequest.set(outer);
+            } else {
+                conditionalRequest.remove();
+            }
+        }
+    }
+
+    /**
+     * @return how long past the TTL to keep values that have validators, in ms
      */
-    private Map<String, SearchResult> searchUsingThreadPool(Map<String, SearchQuery> queryEntries) {
-        Map<String, SearchResult> results = new HashMap<>();
+    protected long getCacheRevalidateMs() {
+        return cacheRevalidateMs;
+    }
 
-        ExecutorCompletionService<SearchResult> completionService = getThreadPool().createCompletionService(SearchResult.class);
+    private boolean isLimitAgnostic(SearchQuery query) {
+        return cacheFetchLimit > 0 && query.getLimit() <= cacheFetchLimit;
+    }
 
-        queryEntries.entrySet().stream().forEach(queryEntry -> {
-            SearchTask task = createSearchTask(queryEntry.getKey(), queryEntry.getValue());
-            completionService.submit(task);
-        });
+    private CacheKey getCacheKey(SearchQuery query) {
+        return CacheKey.of(getClass().getSimpleName() + "|" + getCanonicalKey(query, !isLimitAgnostic(query)));
+    }
 
-        for(int i = 0; i < queryEntries.size(); i++) {
-            try {
-                SearchResult result = completionService.take().get();
-                String indexKey = result.getKey();
-                results.put(indexKey, result);
-            } catch (InterruptedException | ExecutionException e) {
-                log.error("searchUsingThreadPool: error getting value from future: " + StringUtil.getStackTrace(e));
-            }
+    /**
+     * @return the string a query's cache key is made from; data sources
+     * can override this to leave out parts of the query they ignore
+     */
+    protected String getCanonicalKey(SearchQuery query, boolean includeLimit) {
+        return query.getCanonicalKey(includeLimit);
+    }
+
+    /**
+     * Looks up the results of a query in the cache, without searching
+     * if they're not there.
+     *
+     * @return all the cached results, re-scored for query if needed but not
+     * cut down to its limit; null if there's no usable cache entry
+     */
+    protected List<Result> peekCache(SearchQuery query) {
+        if(!isCacheEnabled()) {
+            return null;
+        }
+        Cache.ValueWrapper value = getCacheManager().getCache(Application.CACHE_DEFAULT).get(getCacheKey(query));
+        if(value == null || !(value.get() instanceof CachedResults) || ((CachedResults) value.get()).isError()
+                || ((CachedResults) value.get()).getAgeMillis() >= cacheTtlMs) {
+            return null;
         }
+        return fromCachedResults(query, (CachedResults) value.get(), false);
+    }
 
-        try {
-            long start = System.currentTimeMillis();
-            updateStats(results.values());
-            log.debug(String.format("updateStats took %s ms", System.currentTimeMillis() - start));
-        } catch(Exception e) {
-            log.error("error in updateStats(), ignoring and continuing: " + StringUtil.getStackTrace(e));
+    /**
+     * Called when a query isn't in the cache, before searching for it,
+     * to give data sources a chance to work out its results from other
+     * cache entries (see peekCache()).
+     *
+     * @return results for query, or null to search for it; this default
+     * always returns null
+     */
+    protected List<Result> searchOtherCacheEntries(SearchQuery query) {
+        return null;
+    }
+
+    private CachedResults toCachedResults(SearchQuery query, List<Result> results, Validators validators) {
+        if(results.isEmpty() && cacheEmptyTtlMs > 0) {
+            return new CachedResults(query.getQuery(), results, cacheEmptyTtlMs);
         }
+        if(validators != null && cacheRevalidateMs > 0) {
+            return new CachedResults(query.getQuery(), results, cacheTtlMs + cacheRevalidateMs, validators);
+        }
+        return new CachedResults(query.getQuery(), results, 0);
+    }
 
-        return results;
+    /**
+     * @return the cached results, cut down to the query's limit if applyLimit,
+     * and re-scored if they were fetched for a slightly different query
+     */
+    private List<Result> fromCachedResults(SearchQuery query, CachedResults cached, boolean applyLimit) {
+        List<Result> results = cached.getResults();
+        if(applyLimit && results.size() > query.getLimit()) {
+            results = results.subList(0, query.getLimit());
+        }
+        if(query.getQuery().equals(cached.getQuery())) {
+            return new ArrayList<>(results);
+        }
+        List<Result> rescored = new ArrayList<>(results.size());
+        for(Result result : results) {
+            rescored.add(rescore(query, result));
+        }
+        return rescored;
     }
 
-    // TODO: remove throws when this is more solid
-    private void updateStats(Collection<SearchResult> results) throws Exception {
-        Map<CounterType, Integer> counts = results.stream().collect(
-                HashMap::new,
-                (partial, element) -> {
-                    partial.put(CounterType.QUERIES, partial.getOrDefault(CounterType.QUERIES, 0) + 1);
-                    if(!element.isSuccessful()) {
-                        partial.put(CounterType.ERRORS, partial.getOrDefault(CounterType.ERRORS, 0) + 1);
-                    }
-                },
-                (e1, e2) -> { e1.putAll(e2); });
+    /**
+     * Adjusts a result found for a query that differs from this one only
+     * in case or whitespace, so that it's as if it had been found for this
+     * one. Data sources whose scores depend on the exact text of the query
+     * should override this. This default returns the result unchanged.
+     *
+     * @return result, or a modified copy of it; never modify result itself,
+     * since it's shared through the cache
+     */
+    protected Result rescore(SearchQuery query, Result result) {
+        return result;
+    }
 
-        Interval interval = getStats().getCurrentInterval();
-        interval.add(CounterType.QUERIES, counts.getOrDefault(CounterType.QUERIES, 0));
-        interval.add(CounterType.ERRORS, counts.getOrDefault(CounterType.ERRORS, 0));
+    /**
+     * @return true if e is a failure of the upstream service (or of parsing
+     * its response) that's likely to happen again if the query is re-sent
+     * right away, as opposed to running out of time on our end
+     */
+    private static boolean isCacheableError(Exception e) {
+        // the breaker decides for itself when to try again
+        if(e instanceof DeadlineExceededException || e instanceof InterruptedException
+                || e instanceof CircuitOpenException) {
+            return false;
+        }
+        // interrupted while waiting on a rate limit, or cancelled
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
 
-        getStats().setThreadPoolSize(getThreadPool().getPoolSize());
+    private boolean shouldRefresh(CachedResults cached) {
+        // entries with their own TTL aren't worth refreshing early, unless
+        // it's only longer so they can be revalidated
+        if(cached.getTimeToLiveMs() > 0 && cached.getValidators() == null) {
+            return false;
+        }
+        long age = cached.getAgeMillis();
+        if(cacheSoftTtlMs > 0 && age >= cacheSoftTtlMs) {
+            getStats().getCurrentInterval().add(CounterType.STALE_HITS, 1);
+            return true;
+        }
+        long staleAt = cacheSoftTtlMs > 0 ? cacheSoftTtlMs : cacheTtlMs;
+        return cacheRefreshAheadMs > 0
+                && age >= staleAt - cacheRefreshAheadMs
+                && cached.recordHit() >= cacheRefreshAheadHits;
     }
 
     /**
-     * Performs a search for a single query; this entry point checks the cache, if enabled.
-     * This is a "lower level" call than search(Map).
+     * Data sources that cache intermediate data of their own should only
+     * reuse it while it's fresh, so that refreshing a stale entry actually
+     * goes upstream.
      *
-     * @param query search to perform
-     * @return list of search results (a 0-size list if none, or if errors occurred)
+     * @return whether a cache entry of this age is still fresh
      */
-    public List<Result> searchCheckCache(SearchQuery query) throws Exception {
-        if (isCacheEnabled()) {
-            Cache cache = getCacheManager().getCache(Application.CACHE_DEFAULT);
-
-            String key = getClass().getSimpleName() + "|" + query.getHashKey();
-            Cache.ValueWrapper value = cache.get(key);
+    protected boolean isFresh(long ageMs) {
+        long staleAt = cacheSoftTtlMs > 0 ? cacheSoftTtlMs : cacheTtlMs;
+        return ageMs < staleAt - cacheRefreshAheadMs;
+    }
 
-            List<Result> results;
-            if(value != null) {
-                log.info("Cache hit for: " + key);
-                results = (List<Result>) value.get();
-            } else {
-                results = search(query);
-                cache.put(key, results);
-            }
-            return results;
+    /**
+     * Queues a search to replace a cache entry, unless one is already
+     * queued, or there are searches waiting for the thread pool: refreshes
+     * are low priority and can be skipped, since the entry is still usable
+     * until its hard TTL.
+     */
+    private void refreshInBackground(Cache cache, CacheKey key, SearchQuery query, CachedResults previous) {
+        if(getThreadPool().getQueueSize() > 0 || !refreshing.add(key)) {
+            return;
         }
+        ClientContext previousContext = ClientContext.current();
+        ClientContext.set(CACHE_REFRESH_CONTEXT);
+        try {
+            getThreadPool().submit(() -> {
+                try {
+                    singleFlight.execute(key, () -> {
+                        CachedResults fetched = fetch(query, previous);
+                        cache.put(key, fetched);
+                        return fetched;
+                    });
+                    getStats().getCurrentInterval().add(CounterType.REFRESHES, 1);
+                    log.debug("Refreshed cache entry for: " + query.getQuery());
+                } catch (CircuitOpenException e) {
+                    // expected while the host is down; the stale entry is still served
+                    log.debug("Circuit open, keeping stale cache entry: " + query.getQuery());
+                    getStats().getCurrentInterval().add(CounterType.CIRCUIT_OPEN, 1);
+                } catch (Exception e) {
+                    log.info("Couldn't refresh cache entry, keeping stale one: " + query.getQuery() + ": " + e);
+                } finally {
+                    refreshing.remove(key);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            throw e;
+        } finally {
+            ClientContext.set(previousContext);
+        }
+    }
 
-        return search(query);
+    /**
+     * Calls search(), hedged according to the HedgingPolicy, reporting how
+     * long each attempt took and whether it failed due to overload to the
+     * thread pool's concurrency limit.
+     */
+    private List<Result> searchAndSample(SearchQuery query) throws Exception {
+        return hedgingPolicy.call(() -> {
+            long start = System.nanoTime();
+            boolean dropped = false;
+            boolean sent = true;
+            try {
+                return search(query);
+            } catch (CircuitOpenException e) {
+                sent = false;
+                throw e;
+            } catch (HttpStatusException e) {
+                dropped = e.getStatusCode() == 429 || e.getStatusCode() == 503;
+                throw e;
+            } catch (SocketTimeoutException e) {
+                dropped = true;
+                throw e;
+            } finally {
+                // attempts cancelled in favor of a hedge, or never sent, aren't samples of anything
+                if(sent && !Thread.currentThread().isInterrupted()) {
+                    getThreadPool().onSample(System.nanoTime() - start, dropped);
+                }
+            }
+        }, getThreadPool(), getStats());
     }
 
     /**
@@ -291,4 +845,167 @@ public abstract class WebServiceDataSource extends DataSource {
      */
     public abstract List<Result> search(SearchQuery query) throws Exception;
 
+    /**
+     * Implementations of search() should use this to get the response body
+     * from a connection. If the server responded with an HTTP error,
+     * this throws an HttpStatusException with the status code and
+     * Retry-After value, so errors can be handled without parsing messages.
+     *
+     * If the search is running under a deadline, the connection's timeouts
+     * are shortened to fit in the time remaining.
+     *
+     * Unless compression is disabled, this asks for a gzip or deflate
+     * encoded response, and the stream returned decompresses it as it's
+     * read. (Brotli isn't offered, since the JDK can't decode it.) The bytes
+     * received, and what they decompressed to, are added to the stats.
+     */
+    protected InputStream openInputStream(HttpURLConnection conn) throws IOException {
+        if(compressionEnabled) {
+            conn.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+        }
+        Deadline deadline = Deadline.current();
+        if(deadline.isSet()) {
+            long remaining = deadline.remainingMillis();
+            if(remaining <= 0) {
+                throw new DeadlineExceededException();
+            }
+            int timeout = (int) Math.min(Integer.MAX_VALUE, remaining);
+            if(conn.getConnectTimeout() == 0 || conn.getConnectTimeout() > timeout) {
+                conn.setConnectTimeout(timeout);
+            }
+            if(conn.getReadTimeout() == 0 || conn.getReadTimeout() > timeout) {
+                conn.setReadTimeout(timeout);
+            }
+        }
+        InputStream in;
+        ConditionalRequest conditional = conditionalRequest.get();
+        boolean isConditional = conditional != null && conditional.addConditions(conn);
+        try {
+            in = conn.getInputStream();
+        } catch (IOException ioe) {
+            int statusCode;
+            try {
+                statusCode = conn.getResponseCode();
+            } catch (IOException ioe2) {
+                throw ioe;
+            }
+            if(statusCode >= 400) {
+                throw new HttpStatusException(statusCode, conn.getHeaderField("Retry-After"), ioe);
+            }
+            throw ioe;
+        }
+        if(conditional != null) {
+            if(isConditional && conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                in.close();
+                throw new NotModifiedException();
+            }
+            conditional.onResponse(Validators.of(conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified")));
+        }
+        return decode(in, conn.getContentEncoding());
+    }
+
+    /**
+     * State of a fetchConditionally() call, for openInputStream().
+     */
+    private static class ConditionalRequest {
+
+        private final Validators validators;
+        private int responses = 0;
+        private Validators responseValidators;
+
+        ConditionalRequest(Validators validators) {
+            this.validators = validators;
+        }
+
+        /**
+         * @return true if conditions were added to conn; they only are
+         * for the first request
+         */
+        boolean addConditions(HttpURLConnection conn) {
+            if(validators == null || responses > 0) {
+                return false;
+            }
+            if(validators.getEtag() != null) {
+                conn.setRequestProperty("If-None-Match", validators.getEtag());
+            }
+            if(validators.getLastModified() != null) {
+                conn.setRequestProperty("If-Modified-Since", validators.getLastModified());
+            }
+            return true;
+        }
+
+        void onResponse(Validators validators) {
+            responses++;
+            responseValidators = responses == 1 ? validators : null;
+        }
+
+        Validators getResponseValidators() {
+            return responseValidators;
+        }
+    }
+
+    /**
+     * Thrown by openInputStream() for a 304 response to a conditional request.
+     */
+    private static class NotModifiedException extends IOException {
+        NotModifiedException() {
+            super("Not modified");
+        }
+    }
+
+    private InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if(in == null) {
+            return null;
+        }
+        CountingInputStream received = new CountingInputStream(in);
+        InputStream decoded;
+        String encoding = contentEncoding != null ? contentEncoding.trim().toLowerCase() : "";
+        switch(encoding) {
+            case "":
+            case "identity":
+                decoded = received;
+                break;
+            case "gzip":
+            case "x-gzip":
+                decoded = new GZIPInputStream(received, BUFFER_SIZE);
+                break;
+            case "deflate":
+                decoded = inflate(received);
+                break;
+            default:
+                received.close();
+                throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+        return new CountingInputStream(decoded, count -> {
+            Interval interval = getStats().getCurrentInterval();
+            interval.add(CounterType.BYTES_IN, received.getCount());
+            interval.add(CounterType.BYTES_DECODED, count);
+        });
+    }
+
+    /**
+     * "deflate" is meant to be zlib-wrapped, but some servers send raw
+     * deflate data, so this looks at the first two bytes to tell which.
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int n = pushback.readNBytes(header, 0, 2);
+        pushback.unread(header, 0, n);
+        boolean zlib = n == 2 && (header[0] & 0x0F) == 8
+                && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+        Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // not done by InflaterInputStream for an Inflater passed in
+                    inflater.end();
+                }
+            }
+        };
+    }
+
 }
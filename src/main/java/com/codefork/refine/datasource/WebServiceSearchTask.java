@@ -2,8 +2,12 @@ package com.codefork.refine.datasource;
 
 import com.codefork.refine.SearchQuery;
 import com.codefork.refine.SearchResult;
+import com.codefork.refine.concurrency.CircuitOpenException;
+import com.codefork.refine.datasource.stats.CounterType;
 import com.codefork.refine.resources.Result;
 
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
@@ -19,6 +23,7 @@ public class WebServiceSearchTask implements SearchTask {
     private WebServiceDataSource dataSource;
     private String key;
     private SearchQuery searchQuery;
+    private Deadline deadline = Deadline.NONE;
 
     public WebServiceSearchTask(WebServiceDataSource dataSource, String key, SearchQuery searchQuery) {
         this.key = key;
@@ -36,19 +41,45 @@ public class WebServiceSearchTask implements SearchTask {
         return searchQuery;
     }
 
+    @Override
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
     @Override
     public SearchResult call() {
         List<Result> results;
         String key = getKey();
         SearchQuery searchQuery = getSearchQuery();
+        if(deadline.isExpired()) {
+            return new SearchResult(key, SearchResult.ErrorType.DEADLINE_EXCEEDED);
+        }
+        Deadline.setCurrent(deadline);
         try {
-            results = dataSource.searchCheckCache(searchQuery);
+            // copy, b/c the list we get back may be shared through the cache
+            // or with other tasks waiting on the same query
+            results = new ArrayList<>(dataSource.searchCheckCache(searchQuery));
+        } catch (DeadlineExceededException e) {
+            dataSource.getLog().info(String.format("deadline passed for query=%s", searchQuery.getQuery()));
+            return new SearchResult(key, SearchResult.ErrorType.DEADLINE_EXCEEDED);
+        } catch (CachedErrorException e) {
+            dataSource.getLog().info(String.format("cached error for query=%s", searchQuery.getQuery()));
+            return new SearchResult(key, SearchResult.ErrorType.CACHED_ERROR);
+        } catch (CircuitOpenException e) {
+            dataSource.getLog().info(String.format("circuit open for %s, not running query=%s", e.getHost(), searchQuery.getQuery()));
+            dataSource.getStats().getCurrentInterval().add(CounterType.CIRCUIT_OPEN, 1);
+            return new SearchResult(key, SearchResult.ErrorType.CIRCUIT_OPEN);
+        } catch (HttpStatusException e) {
+            dataSource.getLog().error(String.format("error for query=%s", searchQuery.getQuery()), e);
+            return new SearchResult(key, SearchResult.ErrorType.forStatusCode(e.getStatusCode()), e.getRetryAfterMs());
+        } catch (SocketTimeoutException e) {
+            dataSource.getLog().error(String.format("timeout for query=%s", searchQuery.getQuery()), e);
+            return new SearchResult(key, SearchResult.ErrorType.TIMEOUT);
         } catch (Exception e) {
             dataSource.getLog().error(String.format("error for query=%s", searchQuery.getQuery()), e);
-            if (e.toString().contains("HTTP response code: 429")) {
-                return new SearchResult(key, SearchResult.ErrorType.TOO_MANY_REQUESTS);
-            }
             return new SearchResult(key, SearchResult.ErrorType.UNKNOWN);
+        } finally {
+            Deadline.setCurrent(null);
         }
         results.sort(BY_SCORE_REVERSED);
         return new SearchResult(key, results);
@@ -2,7 +2,33 @@ package com.codefork.refine.datasource.stats;
 
 public enum CounterType {
     QUERIES("countQueries"),
-    ERRORS("countErrors");
+    ERRORS("countErrors"),
+    RETRIES("countRetries"),
+    DEADLINE_EXCEEDED("countDeadlineExceeded"),
+    // queries turned away because the data source was overloaded
+    SHED("countShed"),
+    // cache hits past the soft TTL, served while being refreshed
+    STALE_HITS("countStaleHits"),
+    // cache entries refreshed in the background
+    REFRESHES("countRefreshes"),
+    // cache hits on searches that found nothing
+    EMPTY_CACHE_HITS("countEmptyCacheHits"),
+    // searches answered with a cached upstream error instead of being sent again
+    ERROR_CACHE_HITS("countErrorCacheHits"),
+    // searches answered from the cached results of a related query
+    DERIVED_CACHE_HITS("countDerivedCacheHits"),
+    // bytes of response bodies received from upstream, compressed or not
+    BYTES_IN("countBytesIn"),
+    // bytes of response bodies once decompressed, as the parsers see them
+    BYTES_DECODED("countBytesDecoded"),
+    // duplicate requests sent for slow upstream requests
+    HEDGES("countHedges"),
+    // hedges that answered before the request they duplicated
+    HEDGES_WON("countHedgesWon"),
+    // searches that failed straight away because the upstream's circuit breaker was open
+    CIRCUIT_OPEN("countCircuitOpen"),
+    // cache entries renewed because upstream said they hadn't changed
+    REVALIDATED("countRevalidated");
 
     private final String jsonKeyName;
 
@@ -10,7 +10,7 @@ import java.util.Map;
  */
 public class Interval {
 
-    private final Map<CounterType, Integer> counters = new HashMap<>();
+    private final Map<CounterType, Long> counters = new HashMap<>();
     private long start;
     private long duration;
 
@@ -34,12 +34,12 @@ public class Interval {
         return timestamp() - getStart() > duration;
     }
 
-    public void add(CounterType counterType, int value) {
-        counters.put(counterType, counters.getOrDefault(counterType, 0) + value);
+    public synchronized void add(CounterType counterType, long value) {
+        counters.put(counterType, counters.getOrDefault(counterType, 0L) + value);
     }
 
-    public int get(CounterType counterType) {
-        return counters.getOrDefault(counterType, 0);
+    public synchronized long get(CounterType counterType) {
+        return counters.getOrDefault(counterType, 0L);
     }
 
 }
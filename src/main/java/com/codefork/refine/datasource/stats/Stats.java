@@ -46,6 +46,10 @@ public class Stats {
 
     private int threadPoolSize = 0;
 
+    private int queueSize = 0;
+
+    private long queueWaitMs = 0;
+
     public Stats() {
         // must be added from smallest to largest
         buckets.add(new Bucket("Last 5 mins", 5 * 60));
@@ -142,6 +146,22 @@ public class Stats {
         return threadPoolSize;
     }
 
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueWaitMs(long queueWaitMs) {
+        this.queueWaitMs = queueWaitMs;
+    }
+
+    public long getQueueWaitMs() {
+        return queueWaitMs;
+    }
+
     private synchronized Map<Bucket, Interval> tally(long now) {
         // create a map of intervals to new buckets
         Map<Bucket, Interval> tallyMap = buckets.stream().collect(Collectors.toMap(
@@ -154,8 +174,9 @@ public class Stats {
         intervals.forEach(interval -> {
             tallyIntervals.forEach(tallyInterval -> {
                 if(interval.getStart() >= tallyInterval.getStart()) {
-                    tallyInterval.add(CounterType.QUERIES, interval.get(CounterType.QUERIES));
-                    tallyInterval.add(CounterType.ERRORS, interval.get(CounterType.ERRORS));
+                    for(CounterType counterType : CounterType.values()) {
+                        tallyInterval.add(counterType, interval.get(counterType));
+                    }
                 }
             });
         });
@@ -177,8 +198,9 @@ public class Stats {
                     Interval interval = tallyMap.get(bucket);
                     Map<String, Object> map = new HashMap<>();
                     map.put("label", bucket.getLabel());
-                    map.put(CounterType.QUERIES.getJsonKeyName(), interval.get(CounterType.QUERIES));
-                    map.put(CounterType.ERRORS.getJsonKeyName(), interval.get(CounterType.ERRORS));
+                    for(CounterType counterType : CounterType.values()) {
+                        map.put(counterType.getJsonKeyName(), interval.get(counterType));
+                    }
                     return map;
                 }).collect(Collectors.toList());
 
@@ -186,6 +208,8 @@ public class Stats {
         statsDataSource.setName(getDataSourceName());
         statsDataSource.setNumIntervalsStored(intervals.size());
         statsDataSource.setThreadPoolSize(threadPoolSize);
+        statsDataSource.setQueueSize(queueSize);
+        statsDataSource.setQueueWaitMs(queueWaitMs);
         statsDataSource.setStats(stats);
 
         return statsDataSource;
@@ -72,7 +72,7 @@ public class OpenLibrary extends WebServiceDataSource {
 
             HttpURLConnection conn = getConnectionFactory().createConnection(url);
 
-            JsonNode root = mapper.readTree(conn.getInputStream());
+            JsonNode root = mapper.readTree(openInputStream(conn));
             JsonNode docs = root.get("docs");
             if(docs.isArray()) {
                 Iterator<JsonNode> iter = docs.iterator();
@@ -1,12 +1,18 @@
 package com.codefork.refine.orcid;
 
+import com.codefork.refine.Application;
 import com.codefork.refine.Config;
 import com.codefork.refine.PropertyValue;
 import com.codefork.refine.SearchQuery;
 import com.codefork.refine.StringUtil;
 import com.codefork.refine.ThreadPool;
 import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.concurrency.CircuitOpenException;
 import com.codefork.refine.datasource.ConnectionFactory;
+import com.codefork.refine.datasource.HedgingPolicy;
+import com.codefork.refine.datasource.Validated;
+import com.codefork.refine.datasource.Validators;
+import com.codefork.refine.datasource.stats.CounterType;
 import com.codefork.refine.datasource.stats.Stats;
 import com.codefork.refine.datasource.WebServiceDataSource;
 import com.codefork.refine.resources.Result;
@@ -14,6 +20,7 @@ import com.codefork.refine.resources.ServiceMetaDataResponse;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.web.util.UriUtils;
 
@@ -42,12 +49,19 @@ public abstract class OrcidBase extends WebServiceDataSource {
 
     private final ThreadPool threadPoolForIndividualRecords;
 
+    // records have their own latencies, so they're hedged separately from searches
+    private final HedgingPolicy recordHedgingPolicy;
+
     private static final int POOL_SIZE_FOR_INDIVIDUAL_RECORDS = 20;
 
+    private final long recordTtlMs;
+
     @Autowired
     public OrcidBase(Config config, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory, Stats stats) {
         super(config, cacheManager, threadPoolFactory, connectionFactory, stats);
         threadPoolForIndividualRecords = createThreadPoolForIndividualRecords();
+        recordHedgingPolicy = new HedgingPolicy(getConfigProperties());
+        recordTtlMs = Long.parseLong(config.getProperties().getProperty(Config.PROP_CACHE_ORCID_RECORDS_TTL, "0")) * 1000;
 
     }
 
@@ -124,7 +138,7 @@ public abstract class OrcidBase extends WebServiceDataSource {
         log.debug("Making request to " + url);
         HttpURLConnection conn = getConnectionFactory().createConnection(url);
 
-        InputStream response = conn.getInputStream();
+        InputStream response = openInputStream(conn);
 
         SAXParser parser = spf.newSAXParser();
         OrcidSearchResultsParser orcidParser = new OrcidSearchResultsParser();
@@ -158,12 +172,64 @@ public abstract class OrcidBase extends WebServiceDataSource {
 
         @Override
         public Result call() throws Exception {
+            Cache recordCache = getRecordCache();
+            OrcidRecord cachedRecord = null;
+            if(recordCache != null) {
+                Cache.ValueWrapper value = recordCache.get(result.getId());
+                if(value != null && value.get() instanceof OrcidRecord) {
+                    cachedRecord = (OrcidRecord) value.get();
+                    // records past the TTL are only kept so they can be revalidated
+                    if(cachedRecord.getValidators() == null || cachedRecord.getAgeMillis() < recordTtlMs) {
+                        result.setName(cachedRecord.getName());
+                        return score(result);
+                    }
+                }
+            }
+
+            // each attempt parses into its own copy, since a hedge may run alongside
+            Validated<Result> fetched;
+            try {
+                fetched = fetchConditionally(cachedRecord != null ? cachedRecord.getValidators() : null,
+                        () -> recordHedgingPolicy.call(() -> fetchRecord(new Result(this.result)),
+                                threadPoolForIndividualRecords, getStats()));
+            } catch (Exception e) {
+                if(cachedRecord == null) {
+                    throw e;
+                }
+                // a stale name beats none
+                log.info("Couldn't revalidate ORCID record, using stale one: " + result.getId() + ": " + e);
+                getStats().getCurrentInterval().add(CounterType.STALE_HITS, 1);
+                if(e instanceof CircuitOpenException) {
+                    getStats().getCurrentInterval().add(CounterType.CIRCUIT_OPEN, 1);
+                }
+                result.setName(cachedRecord.getName());
+                return score(result);
+            }
+
+            if(fetched == null) {
+                getStats().getCurrentInterval().add(CounterType.REVALIDATED, 1);
+                recordCache.put(result.getId(), cachedRecord.renewed());
+                result.setName(cachedRecord.getName());
+                return score(result);
+            }
+
+            Result result = fetched.getValue();
+            if(result != null && recordCache != null) {
+                Validators validators = getCacheRevalidateMs() > 0 ? fetched.getValidators() : null;
+                recordCache.put(result.getId(), new OrcidRecord(result.getId(), result.getName(), validators,
+                        validators != null ? recordTtlMs + getCacheRevalidateMs() : 0));
+            }
+
+            return score(result);
+        }
+
+        private Result fetchRecord(Result result) throws Exception {
             String url = String.format("https://pub.orcid.org/v2.1/%s/record", result.getId());
 
             log.debug("Filling in ORCID result: making request to " + url);
 
             HttpURLConnection conn = getConnectionFactory().createConnection(url);
-            InputStream response = conn.getInputStream();
+            InputStream response = openInputStream(conn);
 
             SAXParser parser = spf.newSAXParser();
             OrcidIndividualRecordParser orcidParser = new OrcidIndividualRecordParser(result);
@@ -177,8 +243,10 @@ public abstract class OrcidBase extends WebServiceDataSource {
                 log.error("Ignoring error from trying to close input stream and connection: " + ioe);
             }
 
-            Result result = orcidParser.getParseState().result;
+            return orcidParser.getParseState().result;
+        }
 
+        private Result score(Result result) {
             if(result != null) {
                 if(result.getName() != null) {
                     result.setScore(StringUtil.levenshteinDistanceRatio(result.getName(), query.getQuery()));
@@ -186,11 +254,31 @@ public abstract class OrcidBase extends WebServiceDataSource {
                     log.warn("Name not found in record for " + result.getId());
                 }
             }
-
             return result;
         }
     }
 
+    /**
+     * Records are cached by ORCID iD, separately from search results,
+     * since the same people turn up in the results of many searches.
+     * @return the record cache, or null if caching is disabled
+     */
+    private Cache getRecordCache() {
+        return isCacheEnabled() ? getCacheManager().getCache(Application.CACHE_ORCID_RECORDS) : null;
+    }
+
+    /**
+     * Scores depend on the exact text of the query; see FillInResultTask
+     */
+    @Override
+    protected Result rescore(SearchQuery query, Result result) {
+        Result rescored = new Result(result);
+        if(result.getName() != null) {
+            rescored.setScore(StringUtil.levenshteinDistanceRatio(result.getName(), query.getQuery()));
+        }
+        return rescored;
+    }
+
     /**
      * given a list of Results with id field populated, fills in the name and other fields
      * @param results
@@ -0,0 +1,75 @@
+package com.codefork.refine.orcid;
+
+import com.codefork.refine.cache.TimeToLive;
+import com.codefork.refine.datasource.Validators;
+
+import java.io.Serializable;
+
+/**
+ * The fields we get from an individual ORCID record (see
+ * OrcidIndividualRecordParser), as kept in the record cache.
+ *
+ * Records that came with validators are kept past the record cache's
+ * TTL, so they can be revalidated instead of fetched again.
+ */
+public class OrcidRecord implements Serializable, TimeToLive {
+
+    private static final long serialVersionUID = 2L;
+
+    private final String id;
+    private final String name;
+    private final Validators validators;
+    private final long timeToLiveMs;
+    private final long storedAt;
+
+    public OrcidRecord(String id, String name) {
+        this(id, name, null, 0);
+    }
+
+    /**
+     * @param timeToLiveMs how long to keep the record; 0 for the cache's default
+     */
+    public OrcidRecord(String id, String name, Validators validators, long timeToLiveMs) {
+        this.id = id;
+        this.name = name;
+        this.validators = validators;
+        this.timeToLiveMs = timeToLiveMs;
+        this.storedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return a copy stored now, for when upstream says the record hasn't changed
+     */
+    public OrcidRecord renewed() {
+        return new OrcidRecord(id, name, validators, timeToLiveMs);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the person's name, or null if the record didn't have one
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return validators of the response the record came from, or null
+     */
+    public Validators getValidators() {
+        return validators;
+    }
+
+    @Override
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - storedAt;
+    }
+
+    @Override
+    public long getTimeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.codefork.refine.resources;
+
+public class CacheSnapshotResult {
+
+    private String file;
+    private long entries;
+    private long bytes;
+    private long elapsedMs;
+
+    public CacheSnapshotResult() {
+    }
+
+    public CacheSnapshotResult(String file, long entries, long bytes, long elapsedMs) {
+        this.file = file;
+        this.entries = entries;
+        this.bytes = bytes;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+}
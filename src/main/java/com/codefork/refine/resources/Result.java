@@ -1,6 +1,7 @@
 
 package com.codefork.refine.resources;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,7 +21,9 @@ import java.util.List;
  *     'match': true
  * }
  */
-public class Result {
+public class Result implements Serializable {
+
+    private static final long serialVersionUID = 1L;
     
     private String id;
     private String name;
@@ -37,6 +40,14 @@ public class Result {
     public Result() {
     }
 
+    public Result(Result other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.type = other.type;
+        this.score = other.score;
+        this.match = other.match;
+    }
+
     public Result(String id, String name, NameType nameType, double score, boolean match) {
         this.id = id;
         this.name = name;
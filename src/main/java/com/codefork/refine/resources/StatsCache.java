@@ -0,0 +1,80 @@
+package com.codefork.refine.resources;
+
+import java.util.List;
+
+public class StatsCache {
+
+    private String name;
+    private long hits;
+    private long misses;
+    private float hitPercentage;
+    private long puts;
+    private long evictions;
+    private long expirations;
+    private List<StatsCacheTier> tiers;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public float getHitPercentage() {
+        return hitPercentage;
+    }
+
+    public void setHitPercentage(float hitPercentage) {
+        this.hitPercentage = hitPercentage;
+    }
+
+    public long getPuts() {
+        return puts;
+    }
+
+    public void setPuts(long puts) {
+        this.puts = puts;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public void setExpirations(long expirations) {
+        this.expirations = expirations;
+    }
+
+    public List<StatsCacheTier> getTiers() {
+        return tiers;
+    }
+
+    public void setTiers(List<StatsCacheTier> tiers) {
+        this.tiers = tiers;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.codefork.refine.resources;
+
+public class StatsCacheTier {
+
+    private String name;
+    private long mappings;
+    private long occupiedBytes;
+    private long allocatedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getMappings() {
+        return mappings;
+    }
+
+    public void setMappings(long mappings) {
+        this.mappings = mappings;
+    }
+
+    public long getOccupiedBytes() {
+        return occupiedBytes;
+    }
+
+    public void setOccupiedBytes(long occupiedBytes) {
+        this.occupiedBytes = occupiedBytes;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public void setAllocatedBytes(long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+}
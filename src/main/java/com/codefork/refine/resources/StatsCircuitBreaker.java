@@ -0,0 +1,69 @@
+package com.codefork.refine.resources;
+
+public class StatsCircuitBreaker {
+
+    private String host;
+    private String state;
+    private double failureRate;
+    private double slowCallRate;
+    private int calls;
+    private long rejected;
+    private long timesOpened;
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public double getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    public void setSlowCallRate(double slowCallRate) {
+        this.slowCallRate = slowCallRate;
+    }
+
+    public int getCalls() {
+        return calls;
+    }
+
+    public void setCalls(int calls) {
+        this.calls = calls;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public long getTimesOpened() {
+        return timesOpened;
+    }
+
+    public void setTimesOpened(long timesOpened) {
+        this.timesOpened = timesOpened;
+    }
+
+}
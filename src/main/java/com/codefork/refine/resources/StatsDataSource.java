@@ -8,6 +8,8 @@ public class StatsDataSource {
     private String name;
     private int numIntervalsStored;
     private int threadPoolSize;
+    private int queueSize;
+    private long queueWaitMs;
 
     private List<Map<String, Object>> stats;
 
@@ -35,6 +37,22 @@ public class StatsDataSource {
         this.threadPoolSize = threadPoolSize;
     }
 
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public long getQueueWaitMs() {
+        return queueWaitMs;
+    }
+
+    public void setQueueWaitMs(long queueWaitMs) {
+        this.queueWaitMs = queueWaitMs;
+    }
+
     public List<Map<String, Object>> getStats() {
         return stats;
     }
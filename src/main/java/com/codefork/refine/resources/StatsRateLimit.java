@@ -0,0 +1,78 @@
+package com.codefork.refine.resources;
+
+public class StatsRateLimit {
+
+    private String host;
+    private double rate;
+    private double burst;
+    private double currentRate;
+    private double throttledRate;
+    private long acquired;
+    private long throttled;
+    private long waitedMs;
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    public void setBurst(double burst) {
+        this.burst = burst;
+    }
+
+    public double getCurrentRate() {
+        return currentRate;
+    }
+
+    public void setCurrentRate(double currentRate) {
+        this.currentRate = currentRate;
+    }
+
+    public double getThrottledRate() {
+        return throttledRate;
+    }
+
+    public void setThrottledRate(double throttledRate) {
+        this.throttledRate = throttledRate;
+    }
+
+    public long getAcquired() {
+        return acquired;
+    }
+
+    public void setAcquired(long acquired) {
+        this.acquired = acquired;
+    }
+
+    public long getThrottled() {
+        return throttled;
+    }
+
+    public void setThrottled(long throttled) {
+        this.throttled = throttled;
+    }
+
+    public long getWaitedMs() {
+        return waitedMs;
+    }
+
+    public void setWaitedMs(long waitedMs) {
+        this.waitedMs = waitedMs;
+    }
+
+}
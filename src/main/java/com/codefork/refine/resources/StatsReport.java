@@ -8,6 +8,9 @@ public class StatsReport {
     private long timestamp;
     private String date;
     public List<StatsDataSource> dataSources;
+    private List<StatsRateLimit> rateLimits;
+    private List<StatsCircuitBreaker> circuitBreakers;
+    private List<StatsCache> caches;
 
     public long getTimestamp() {
         return timestamp;
@@ -32,4 +35,28 @@ public class StatsReport {
     public void setDataSources(List<StatsDataSource> dataSources) {
         this.dataSources = dataSources;
     }
+
+    public List<StatsRateLimit> getRateLimits() {
+        return rateLimits;
+    }
+
+    public void setRateLimits(List<StatsRateLimit> rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    public List<StatsCircuitBreaker> getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    public void setCircuitBreakers(List<StatsCircuitBreaker> circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    public List<StatsCache> getCaches() {
+        return caches;
+    }
+
+    public void setCaches(List<StatsCache> caches) {
+        this.caches = caches;
+    }
 }
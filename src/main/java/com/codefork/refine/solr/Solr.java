@@ -64,7 +64,7 @@ public class Solr extends WebServiceDataSource {
         log.debug("Making request to " + url);
         HttpURLConnection conn = getConnectionFactory().createConnection(url);
 
-        InputStream response = conn.getInputStream();
+        InputStream response = openInputStream(conn);
 
         MultiValueFieldStrategy multiValueFieldStrategy = MultiValueFieldStrategy.CONCAT;
         if(MultiValueFieldStrategy.CONCAT.toString().toLowerCase().equals(getConfigProperties().getProperty(PROP_FIELD_NAME_MULTIVALUE_STRATEGY))) {
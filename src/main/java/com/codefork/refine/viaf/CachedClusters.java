@@ -0,0 +1,32 @@
+package com.codefork.refine.viaf;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What VIAF stores in its cluster cache for each upstream search: the
+ * parsed clusters, before they're formatted for a particular source. This
+ * lets one response serve /viaf, /viaf/{source} and /viafproxy/{source}.
+ */
+public class CachedClusters implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<VIAFResult> clusters;
+    private final long storedAt;
+
+    public CachedClusters(List<VIAFResult> clusters) {
+        this.clusters = new ArrayList<>(clusters);
+        this.storedAt = System.currentTimeMillis();
+    }
+
+    public List<VIAFResult> getClusters() {
+        return clusters;
+    }
+
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - storedAt;
+    }
+
+}
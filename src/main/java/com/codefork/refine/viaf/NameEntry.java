@@ -1,12 +1,15 @@
 package com.codefork.refine.viaf;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * This is a name record that we populate from the VIAF XML.
  */
-public class NameEntry {
+public class NameEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
     private String name;
     private List<NameSource> nameSources = new ArrayList<>();
 
@@ -1,9 +1,13 @@
 package com.codefork.refine.viaf;
 
+import java.io.Serializable;
+
 /**
  * Encapsulation for the Source and ID for a name
  */
-public class NameSource {
+public class NameSource implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     // source. e.g. LC, BNF, etc.
     private String source;
@@ -1,10 +1,12 @@
 package com.codefork.refine.viaf;
 
+import com.codefork.refine.Application;
 import com.codefork.refine.Config;
 import com.codefork.refine.SearchQuery;
 import com.codefork.refine.SearchQueryFactory;
 import com.codefork.refine.ThreadPool;
 import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.cache.CacheKey;
 import com.codefork.refine.datasource.ConnectionFactory;
 import com.codefork.refine.datasource.stats.Stats;
 import com.codefork.refine.datasource.WebServiceDataSource;
@@ -16,12 +18,11 @@ import com.codefork.refine.viaf.sources.Source;
 import com.codefork.refine.viaf.sources.VIAFSource;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriUtils;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import java.io.IOException;
@@ -29,6 +30,7 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -116,31 +118,110 @@ public class VIAF extends WebServiceDataSource {
     }
 
     /**
-     * Does actual work of performing a search and parsing the XML.
-     * @param query
-     * @return
-     * @throws ParserConfigurationException
-     * @throws SAXException
-     * @throws IOException
+     * Formats the clusters matching the query for the query's source.
      */
     @Override
     public List<Result> search(SearchQuery query) throws Exception {
+        Source source = findSource(query);
+        List<Result> results = new ArrayList<>();
+        for(VIAFResult viafResult : searchClusters(query)) {
+            results.add(source.formatResult(query, viafResult));
+        }
+        return results;
+    }
+
+    /**
+     * Clusters are cached by CQL query and limit only, so the same upstream
+     * response serves the plain, source-specific and proxy mode services.
+     * The CQL is normalized (see SearchQuery.normalize()), so queries that
+     * differ only in case or whitespace share clusters too, and each gets
+     * them formatted for its own text.
+     * A query with a source can also be answered from the results of the
+     * same query without one, by keeping the clusters that have a name from
+     * that source, as long as that leaves enough of them.
+     */
+    public List<VIAFResult> searchClusters(SearchQuery query) throws Exception {
         String cql = createCqlQueryString(query);
 
         if(cql == null) {
             return Collections.emptyList();
         }
 
+        Cache cache = getClusterCache();
+        if(cache == null) {
+            return fetchClusters(cql, query);
+        }
+
+        CacheKey key = getClusterCacheKey(cql, query.getLimit());
+        List<VIAFResult> clusters = getFreshClusters(cache, key);
+        if(clusters != null) {
+            return clusters;
+        }
+
+        String source = query.getViafSource();
+        if(source != null) {
+            SearchQuery allSourcesQuery = query.copy();
+            allSourcesQuery.setViafSource(null);
+            List<VIAFResult> allSourcesClusters = getFreshClusters(cache,
+                    getClusterCacheKey(createCqlQueryString(allSourcesQuery), query.getLimit()));
+            if(allSourcesClusters != null) {
+                List<VIAFResult> filtered = new ArrayList<>();
+                for(VIAFResult viafResult : allSourcesClusters) {
+                    if(viafResult.getNameBySource(source) != null) {
+                        filtered.add(viafResult);
+                    }
+                }
+                if(filtered.size() >= query.getLimit()) {
+                    getLog().debug(String.format("Filtered cached clusters for source %s: %s", source, query.getQuery()));
+                    return filtered;
+                }
+            }
+        }
+
+        clusters = fetchClusters(cql, query);
+        cache.put(key, new CachedClusters(clusters));
+        return clusters;
+    }
+
+    /**
+     * Clusters are kept in their own cache, so they don't compete with
+     * search results for space.
+     * @return the cluster cache, or null if caching is disabled or there
+     * isn't one
+     */
+    private Cache getClusterCache() {
+        return isCacheEnabled() ? getCacheManager().getCache(Application.CACHE_VIAF_CLUSTERS) : null;
+    }
+
+    private CacheKey getClusterCacheKey(String cql, int limit) {
+        return CacheKey.of("VIAF.clusters|" + SearchQuery.normalize(cql) + "|" + limit);
+    }
+
+    private List<VIAFResult> getFreshClusters(Cache cache, CacheKey key) {
+        Cache.ValueWrapper value = cache.get(key);
+        if(value != null && value.get() instanceof CachedClusters) {
+            CachedClusters cached = (CachedClusters) value.get();
+            if(isFresh(cached.getAgeMillis())) {
+                return cached.getClusters();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Does actual work of performing a search and parsing the XML.
+     */
+    private List<VIAFResult> fetchClusters(String cql, SearchQuery query) throws Exception {
         String url = String.format("https://www.viaf.org/viaf/search?query=%s&sortKeys=holdingscount&maximumRecords=%s",
                 UriUtils.encodeQueryParam(cql, "UTF-8"), query.getLimit());
 
         HttpURLConnection conn = getConnectionFactory().createConnection(url);
         conn.setRequestProperty("Accept", "application/xml");
 
-        InputStream response = conn.getInputStream();
+        InputStream response = openInputStream(conn);
 
         SAXParser parser = spf.newSAXParser();
-        VIAFParser viafParser = new VIAFParser(findSource(query), query);
+        VIAFParser viafParser = new VIAFParser();
 
         long start = System.currentTimeMillis();
         parser.parse(response, viafParser);
@@ -153,11 +234,64 @@ public class VIAF extends WebServiceDataSource {
             getLog().error("Ignoring error from trying to close input stream and connection: " + ioe);
         }
 
-        List<Result> results = viafParser.getResults();
+        List<VIAFResult> clusters = viafParser.getParseState().getViafResults();
         getLog().debug(String.format("Query: %s - parsing took %dms, got %d results",
-                query.getQuery(), parseTime, results.size()));
+                query.getQuery(), parseTime, clusters.size()));
 
-        return results;
+        return clusters;
+    }
+
+    /**
+     * type_strict doesn't change what VIAF returns, so leave it out of cache keys.
+     *
+     * Which of a cluster's names is shown, as well as its score and match
+     * flag, depends on the exact text of the query (see
+     * VIAFSource.formatResult()), which re-scoring the formatted results
+     * can't reproduce. So formatted results are only shared by queries with
+     * exactly the same text; other variants are formatted again from the
+     * cached clusters (see searchClusters()).
+     */
+    @Override
+    protected String getCanonicalKey(SearchQuery query, boolean includeLimit) {
+        SearchQuery keyQuery = query.copy();
+        keyQuery.setTypeStrict(null);
+        return query.getQuery() + "|" + keyQuery.getCanonicalKey(includeLimit);
+    }
+
+    /**
+     * OpenRefine sends the first values in a column without a type, to
+     * guess one, then sends them again with it. Every VIAF result has a name
+     * type, so we can answer the second query by filtering the results of
+     * the first, as long as that leaves enough of them.
+     */
+    @Override
+    protected List<Result> searchOtherCacheEntries(SearchQuery query) {
+        if(query.getNameType() == null) {
+            return null;
+        }
+        VIAFNameType viafNameType = VIAFNameType.getById(query.getNameType().getId());
+        if(viafNameType == null) {
+            return null;
+        }
+
+        SearchQuery untypedQuery = query.copy();
+        untypedQuery.setNameType(null);
+        List<Result> untypedResults = peekCache(untypedQuery);
+        if(untypedResults == null) {
+            return null;
+        }
+
+        List<Result> results = new ArrayList<>();
+        for(Result result : untypedResults) {
+            if(result.getType() != null && result.getType().contains(viafNameType.asNameType())) {
+                results.add(result);
+                if(results.size() == query.getLimit()) {
+                    getLog().debug("Filtered cached untyped results for: " + query.getQuery());
+                    return results;
+                }
+            }
+        }
+        return null;
     }
 
     public static class SourceSpecificSearchQueryFactory implements SearchQueryFactory {
@@ -199,6 +199,14 @@ public class VIAFParser extends XMLParser<VIAFParseState> {
     private Source source;
     private SearchQuery query;
 
+    /**
+     * Creates a parser that only collects VIAFResult objects, without formatting
+     * them; get them from getParseState().getViafResults()
+     */
+    public VIAFParser() {
+        this(null, null);
+    }
+
     /**
      * @param source used for formatting results
      */
@@ -217,6 +225,9 @@ public class VIAFParser extends XMLParser<VIAFParseState> {
 
     @Override
     public void endDocument() {
+        if(source == null) {
+            return;
+        }
         for (VIAFResult viafResult : parseState.viafResults) {
             /*
             log.debug("Result=" + viafResult.getViafId());
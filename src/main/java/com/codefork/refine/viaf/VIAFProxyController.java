@@ -1,18 +1,22 @@
 package com.codefork.refine.viaf;
 
+import com.codefork.refine.datasource.DataSource;
 import com.codefork.refine.resources.SearchResponse;
 import com.codefork.refine.viaf.VIAF;
 import com.codefork.refine.viaf.VIAFProxyModeMetaDataResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Doesn't inherit from DataSourceController or implement API interfaces
@@ -37,16 +41,23 @@ public class VIAFProxyController {
 
     @RequestMapping(value = { "", "/" }, params = "query")
     @ResponseBody
-    public SearchResponse proxyModeQuerySingle(
+    public CompletableFuture<SearchResponse> proxyModeQuerySingle(
             @PathVariable String source, @RequestParam(value = "query") String query) {
-        return viaf.querySingle(query, new VIAF.ProxyModeSearchQueryFactory(source));
+        return viaf.querySingleAsync(query, new VIAF.ProxyModeSearchQueryFactory(source));
     }
 
     @RequestMapping(value = { "", "/" }, params = "queries")
     @ResponseBody
-    public Map<String, SearchResponse> proxyModeQueryMultiple(
+    public CompletableFuture<Map<String, SearchResponse>> proxyModeQueryMultiple(
             @PathVariable String source, @RequestParam(value = "queries") String queries) {
-        return viaf.queryMultiple(queries, new VIAF.ProxyModeSearchQueryFactory(source));
+        return viaf.queryMultipleAsync(queries, new VIAF.ProxyModeSearchQueryFactory(source));
+    }
+
+    @RequestMapping(value = { "", "/" }, params = "queries", produces = DataSource.NDJSON)
+    @ResponseBody
+    public ResponseEntity<ResponseBodyEmitter> proxyModeQueryMultipleStreaming(
+            @PathVariable String source, @RequestParam(value = "queries") String queries) {
+        return viaf.queryMultipleStreaming(queries, new VIAF.ProxyModeSearchQueryFactory(source));
     }
 
 }
@@ -1,5 +1,6 @@
 package com.codefork.refine.viaf;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,7 +11,9 @@ import java.util.List;
  * This is an "intermediate" data structure which needs to get
  * translated into the final format for OpenRefine to consume.
  */
-public class VIAFResult {
+public class VIAFResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String viafId;
     private VIAFNameType nameType;
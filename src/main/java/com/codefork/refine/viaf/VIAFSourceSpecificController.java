@@ -1,18 +1,22 @@
 package com.codefork.refine.viaf;
 
+import com.codefork.refine.datasource.DataSource;
 import com.codefork.refine.resources.SearchResponse;
 import com.codefork.refine.viaf.VIAF;
 import com.codefork.refine.viaf.VIAFMetaDataResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Doesn't inherit from DataSourceController or implement API interfaces
@@ -41,16 +45,23 @@ public class VIAFSourceSpecificController {
 
     @RequestMapping(value = { "", "/" }, params = "query")
     @ResponseBody
-    public SearchResponse sourceSpecificQuerySingle(
+    public CompletableFuture<SearchResponse> sourceSpecificQuerySingle(
             @PathVariable String source, @RequestParam(value = "query") String query) {
-        return viaf.querySingle(query, new VIAF.SourceSpecificSearchQueryFactory(source));
+        return viaf.querySingleAsync(query, new VIAF.SourceSpecificSearchQueryFactory(source));
     }
 
     @RequestMapping(value = { "", "/" }, params = "queries")
     @ResponseBody
-    public Map<String, SearchResponse> sourceSpecificQueryMultiple(
+    public CompletableFuture<Map<String, SearchResponse>> sourceSpecificQueryMultiple(
             @PathVariable String source, @RequestParam(value = "queries") String queries) {
-        return viaf.queryMultiple(queries, new VIAF.SourceSpecificSearchQueryFactory(source));
+        return viaf.queryMultipleAsync(queries, new VIAF.SourceSpecificSearchQueryFactory(source));
+    }
+
+    @RequestMapping(value = { "", "/" }, params = "queries", produces = DataSource.NDJSON)
+    @ResponseBody
+    public ResponseEntity<ResponseBodyEmitter> sourceSpecificQueryMultipleStreaming(
+            @PathVariable String source, @RequestParam(value = "queries") String queries) {
+        return viaf.queryMultipleStreaming(queries, new VIAF.SourceSpecificSearchQueryFactory(source));
     }
 
 }
@@ -0,0 +1,30 @@
+package com.codefork.refine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class SearchQueryTest {
+
+    private static SearchQuery createQuery(String query, String propertyValue) {
+        Map<String, PropertyValue> properties = new HashMap<>();
+        properties.put("keyword", new PropertyValueString(propertyValue));
+        return new SearchQuery(query, 3, null, "should", properties);
+    }
+
+    @Test
+    public void testHashKeyIncludesProperties() {
+        assertEquals(createQuery("Twain, Mark", "novels").getHashKey(),
+                createQuery("Twain, Mark", "novels").getHashKey());
+        assertNotEquals(createQuery("Twain, Mark", "novels").getHashKey(),
+                createQuery("Twain, Mark", "essays").getHashKey());
+        // unlike the canonical key, trivial differences still count
+        assertNotEquals(createQuery("Twain, Mark", "novels").getHashKey(),
+                createQuery("twain, mark", "novels").getHashKey());
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.Application;
+import com.codefork.refine.Config;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.SearchQueryFactory;
+import com.codefork.refine.datasource.CachedResults;
+import com.codefork.refine.datasource.DataSource;
+import com.codefork.refine.datasource.Validators;
+import com.codefork.refine.resources.CacheSnapshotResult;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CacheSnapshotsTest {
+
+    @TempDir
+    File tempDir;
+
+    private static List<Result> results() {
+        List<Result> results = new ArrayList<>();
+        results.add(new Result("1", "Shakespeare, William", new NameType("/people/person", "Person"), 0.9, true));
+        return results;
+    }
+
+    private static CacheManager createCacheManager(Config config) {
+        CacheManager cacheManager = CacheManagers.create(Application.CACHE_DEFAULT, config.getProperties());
+        if(cacheManager instanceof EhcacheCacheManager) {
+            ((EhcacheCacheManager) cacheManager).afterPropertiesSet();
+        }
+        return cacheManager;
+    }
+
+    private void testRoundTrip(String provider) throws Exception {
+        Config config = new Config();
+        config.getProperties().setProperty(Config.PROP_CACHE_PROVIDER, provider);
+
+        CacheManager cacheManager = createCacheManager(config);
+        Cache cache = cacheManager.getCache(Application.CACHE_DEFAULT);
+        cache.put(CacheKey.of("shakespeare"), new CachedResults("Shakespeare", results(), 0));
+        cache.put(CacheKey.of("error"), CachedResults.error(60000));
+
+        File file = new File(tempDir, "snapshot.gz");
+        CacheSnapshotResult saved = new CacheSnapshots(config, cacheManager, Collections.emptyMap()).save(file);
+        assertEquals(1, saved.getEntries());
+        assertTrue(file.length() > 0);
+
+        CacheManager newCacheManager = createCacheManager(config);
+        CacheSnapshotResult loaded = new CacheSnapshots(config, newCacheManager, Collections.emptyMap()).load(file);
+        assertEquals(1, loaded.getEntries());
+
+        Cache newCache = newCacheManager.getCache(Application.CACHE_DEFAULT);
+        Cache.ValueWrapper value = newCache.get(CacheKey.of("shakespeare"));
+        assertNotNull(value);
+        CachedResults cached = (CachedResults) value.get();
+        assertEquals("Shakespeare", cached.getQuery());
+        assertEquals("Shakespeare, William", cached.getResults().get(0).getName());
+        assertNull(newCache.get(CacheKey.of("error")));
+    }
+
+    @Test
+    public void testRoundTripEhcache() throws Exception {
+        testRoundTrip(CacheManagers.PROVIDER_EHCACHE);
+    }
+
+    @Test
+    public void testRoundTripCaffeine() throws Exception {
+        testRoundTrip(CacheManagers.PROVIDER_CAFFEINE);
+    }
+
+    @Test
+    public void testLoadKeepsRemainingTtl() throws Exception {
+        Config config = new Config();
+        config.getProperties().setProperty(Config.PROP_CACHE_PROVIDER, CacheManagers.PROVIDER_CAFFEINE);
+        config.getProperties().setProperty(Config.PROP_CACHE_TTL, "1");
+
+        CacheManager cacheManager = createCacheManager(config);
+        Cache cache = cacheManager.getCache(Application.CACHE_DEFAULT);
+        cache.put(CacheKey.of("plain"), new CachedResults("plain", results(), 0));
+        cache.put(CacheKey.of("empty"), new CachedResults("empty", new ArrayList<>(), 500));
+        // kept past the TTL for revalidation
+        cache.put(CacheKey.of("validated"), new CachedResults("validated", results(), 60000,
+                Validators.of("\"abc\"", null)));
+
+        File file = new File(tempDir, "snapshot.gz");
+        assertEquals(3, new CacheSnapshots(config, cacheManager, Collections.emptyMap()).save(file).getEntries());
+
+        Thread.sleep(1100);
+
+        CacheManager newCacheManager = createCacheManager(config);
+        CacheSnapshotResult loaded = new CacheSnapshots(config, newCacheManager, Collections.emptyMap()).load(file);
+        assertEquals(1, loaded.getEntries());
+
+        Cache newCache = newCacheManager.getCache(Application.CACHE_DEFAULT);
+        assertNull(newCache.get(CacheKey.of("plain")));
+        assertNull(newCache.get(CacheKey.of("empty")));
+        CachedResults validated = (CachedResults) newCache.get(CacheKey.of("validated")).get();
+        assertTrue(validated.getAgeMillis() >= 1100);
+        assertTrue(TimeToLive.forValue(validated, Duration.ofSeconds(1)).toMillis() <= 60000 - 1100);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        SearchQueryFactory searchQueryFactory = mock(SearchQueryFactory.class);
+        when(searchQueryFactory.createSearchQuery(any(JsonNode.class)))
+                .thenAnswer(invocation -> new SearchQuery((JsonNode) invocation.getArgument(0)));
+
+        // the batches passed to each data source, as lists of query text
+        Map<String, List<List<String>>> batches = new HashMap<>();
+        Map<String, DataSource> dataSources = new HashMap<>();
+        for(String name : Arrays.asList("viaf", "orcid")) {
+            DataSource dataSource = mock(DataSource.class);
+            when(dataSource.getSearchQueryFactory()).thenReturn(searchQueryFactory);
+            when(dataSource.searchAsync(anyMap())).thenAnswer(invocation -> {
+                List<String> queries = new ArrayList<>();
+                for(Object searchQuery : ((Map<?, ?>) invocation.getArgument(0)).values()) {
+                    queries.add(((SearchQuery) searchQuery).getQuery());
+                }
+                batches.computeIfAbsent(name, k -> new ArrayList<>()).add(queries);
+                return CompletableFuture.completedFuture(new HashMap<>());
+            });
+            dataSources.put(name, dataSource);
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add("# warm-up queries");
+        for(int i = 0; i < 11; i++) {
+            lines.add("viaf\t{\"query\":\"name " + i + "\"}");
+        }
+        lines.add("nosuchsource\t{\"query\":\"ignored\"}");
+        lines.add("");
+        lines.add("orcid\t{\"query\":\"Carberry, Josiah\"}");
+        File file = new File(tempDir, "warmup.txt");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+        long count = new CacheSnapshots(new Config(), mock(CacheManager.class), dataSources).replay(file);
+
+        assertEquals(12, count);
+        List<List<String>> viafBatches = batches.get("viaf");
+        assertEquals(2, viafBatches.size());
+        assertEquals(10, viafBatches.get(0).size());
+        assertEquals(Collections.singletonList("name 10"), viafBatches.get(1));
+        assertEquals(Collections.singletonList(Collections.singletonList("Carberry, Josiah")), batches.get("orcid"));
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.Config;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import com.codefork.refine.resources.StatsCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.Cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class EhcacheCacheManagerTest {
+
+    @TempDir
+    File tempDir;
+
+    private Properties tieredProperties() {
+        Properties props = new Config().getProperties();
+        props.setProperty(Config.PROP_CACHE_SIZE, "1MB");
+        props.setProperty(Config.PROP_CACHE_OFFHEAP_SIZE, "2MB");
+        props.setProperty(Config.PROP_CACHE_DISK_SIZE, "4MB");
+        props.setProperty(Config.PROP_CACHE_DISK_DIR, tempDir.getAbsolutePath());
+        return props;
+    }
+
+    @Test
+    public void testSurvivesRestart() {
+        List<Result> results = new ArrayList<>();
+        results.add(new Result("1", "Shakespeare, William", new NameType("/people/person", "Person"), 0.9, true));
+
+        EhcacheCacheManager cacheManager = new EhcacheCacheManager("default", tieredProperties());
+        cacheManager.afterPropertiesSet();
+        cacheManager.getCache("default").put("key", new ArrayList<>(results));
+        cacheManager.destroy();
+
+        cacheManager = new EhcacheCacheManager("default", tieredProperties());
+        cacheManager.afterPropertiesSet();
+        Cache.ValueWrapper value = cacheManager.getCache("default").get("key");
+        assertNotNull(value);
+        List<?> cached = (List<?>) value.get();
+        assertEquals(1, cached.size());
+        Result first = (Result) cached.get(0);
+        assertEquals("Shakespeare, William", first.getName());
+        assertEquals("/people/person", first.getType().get(0).getId());
+        assertNull(cacheManager.getCache("default").get("missing"));
+
+        StatsCache stats = cacheManager.getStats().get(0);
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(3, stats.getTiers().size());
+        cacheManager.destroy();
+    }
+
+}
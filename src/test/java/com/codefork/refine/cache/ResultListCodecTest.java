@@ -0,0 +1,60 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResultListCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        List<Result> results = new ArrayList<>();
+        results.add(new Result("96994048", "Shakespeare, William, 1564-1616.", new NameType("/people/person", "Person"), 1.0, true));
+        results.add(new Result("68933968", "Hauptmann, Gérard", new NameType("/people/person", "Person"), 0.25, false));
+        Result noType = new Result();
+        noType.setId("1");
+        results.add(noType);
+
+        List<Result> decoded = ResultListCodec.decode(ResultListCodec.encode(results));
+
+        assertEquals(3, decoded.size());
+        assertEquals("96994048", decoded.get(0).getId());
+        assertEquals("Shakespeare, William, 1564-1616.", decoded.get(0).getName());
+        assertEquals(1.0, decoded.get(0).getScore());
+        assertTrue(decoded.get(0).isMatch());
+        assertEquals("Hauptmann, Gérard", decoded.get(1).getName());
+        assertEquals(0.25, decoded.get(1).getScore());
+        assertFalse(decoded.get(1).isMatch());
+        // name types are stored once and shared
+        assertEquals(new NameType("/people/person", "Person"), decoded.get(1).getType().get(0));
+        assertSame(decoded.get(0).getType().get(0), decoded.get(1).getType().get(0));
+        assertNull(decoded.get(2).getName());
+        assertNull(decoded.get(2).getType());
+    }
+
+    @Test
+    public void testLargeListsCompressed() {
+        List<Result> results = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            results.add(new Result(String.valueOf(i), "Shakespeare, William, 1564-1616.", new NameType("/people/person", "Person"), 0.5, false));
+        }
+
+        byte[] encoded = ResultListCodec.encode(results);
+        assertTrue(encoded.length < 200 * "Shakespeare, William, 1564-1616.".length() / 4);
+
+        List<Result> decoded = ResultListCodec.decode(encoded);
+        assertEquals(200, decoded.size());
+        assertEquals("199", decoded.get(199).getId());
+        assertEquals("Shakespeare, William, 1564-1616.", decoded.get(199).getName());
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.codefork.refine.cache;
+
+import com.codefork.refine.Config;
+import com.codefork.refine.datasource.Validators;
+import com.codefork.refine.orcid.OrcidRecord;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import com.codefork.refine.resources.StatsCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WeightedCaffeineCacheManagerTest {
+
+    private static List<Result> results(int count) {
+        List<Result> results = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            results.add(new Result(String.valueOf(i), "Shakespeare, William", new NameType("/people/person", "Person"), 0.9, true));
+        }
+        return results;
+    }
+
+    @Test
+    public void testWeigher() {
+        ResultWeigher weigher = new ResultWeigher();
+        int one = weigher.weigh("key", results(1));
+        int three = weigher.weigh("key", results(3));
+        assertTrue(one > 0);
+        assertTrue(three > 2 * one);
+    }
+
+    @Test
+    public void testWeigherOrcidRecord() {
+        ResultWeigher weigher = new ResultWeigher();
+        int bare = weigher.weigh("0000-0002-1825-0097", new OrcidRecord("0000-0002-1825-0097", null));
+        int named = weigher.weigh("0000-0002-1825-0097", new OrcidRecord("0000-0002-1825-0097", "Carberry, Josiah"));
+        int validated = weigher.weigh("0000-0002-1825-0097", new OrcidRecord("0000-0002-1825-0097", "Carberry, Josiah",
+                Validators.of("\"abc123\"", "Wed, 21 Oct 2015 07:28:00 GMT"), 0));
+        assertTrue(named > bare + "Carberry, Josiah".length());
+        assertTrue(validated > named + "Wed, 21 Oct 2015 07:28:00 GMT".length());
+    }
+
+    @Test
+    public void testCacheAndStats() {
+        Properties props = new Config().getProperties();
+        props.setProperty(Config.PROP_CACHE_PROVIDER, CacheManagers.PROVIDER_CAFFEINE);
+        props.setProperty(Config.PROP_CACHE_SIZE, "1MB");
+
+        WeightedCaffeineCacheManager cacheManager = (WeightedCaffeineCacheManager) CacheManagers.create("default", props);
+        Cache cache = cacheManager.getCache("default");
+        cache.put("key", results(3));
+
+        Cache.ValueWrapper value = cache.get("key");
+        assertNotNull(value);
+        assertEquals(3, ((List<?>) value.get()).size());
+        assertNull(cache.get("missing"));
+
+        StatsCache stats = cacheManager.getStats().get(0);
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getTiers().get(0).getMappings());
+        assertEquals(new ResultWeigher().weigh("key", results(3)), stats.getTiers().get(0).getOccupiedBytes());
+        assertEquals(1024 * 1024, stats.getTiers().get(0).getAllocatedBytes());
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.codefork.refine.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private static CircuitBreaker createBreaker() {
+        return new CircuitBreaker("test", 50, 50, 500, 10, 4, 100, 2);
+    }
+
+    @Test
+    public void testOpensOnFailures() {
+        CircuitBreaker breaker = createBreaker();
+
+        // not enough calls yet to judge
+        for(int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(FAST, true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(75, breaker.getFailureRate(), 0.01);
+
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejected());
+        assertEquals(1, breaker.getTimesOpened());
+    }
+
+    @Test
+    public void testOpensOnSlowCalls() {
+        CircuitBreaker breaker = createBreaker();
+        for(int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(i % 2 == 0 ? SLOW : FAST, false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(0, breaker.getFailureRate(), 0.01);
+        assertEquals(50, breaker.getSlowCallRate(), 0.01);
+    }
+
+    @Test
+    public void testHalfOpen() throws Exception {
+        CircuitBreaker breaker = createBreaker();
+        for(int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.onResult(FAST, true);
+        }
+        assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(150);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // a failed trial opens it again
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTimesOpened());
+
+        Thread.sleep(150);
+
+        // only as many trials as configured are let through at once
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getCalls());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testWindowSlides() {
+        CircuitBreaker breaker = createBreaker();
+        // 4 failures among 10 calls doesn't reach 50%
+        for(int i = 0; i < 10; i++) {
+            breaker.tryAcquire();
+            breaker.onResult(FAST, i >= 6);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(40, breaker.getFailureRate(), 0.01);
+
+        // the oldest successes drop out of the window
+        breaker.tryAcquire();
+        breaker.onResult(FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(50, breaker.getFailureRate(), 0.01);
+    }
+
+}
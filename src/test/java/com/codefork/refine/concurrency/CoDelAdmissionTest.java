@@ -0,0 +1,46 @@
+package com.codefork.refine.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CoDelAdmissionTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testStandingQueue() {
+        CoDelAdmission admission = new CoDelAdmission(100, 1000);
+        long now = 0;
+
+        // a single slow task isn't enough
+        admission.onDequeue(500 * MS, now);
+        assertFalse(admission.isOverloaded(10));
+
+        // slow for less than the interval
+        admission.onDequeue(500 * MS, now + 500 * MS);
+        assertFalse(admission.isOverloaded(10));
+
+        // slow for the whole interval
+        admission.onDequeue(500 * MS, now + 1000 * MS);
+        assertTrue(admission.isOverloaded(10));
+
+        // one fast task ends it
+        admission.onDequeue(10 * MS, now + 1100 * MS);
+        assertFalse(admission.isOverloaded(10));
+    }
+
+    @Test
+    public void testEmptyQueueResets() {
+        CoDelAdmission admission = new CoDelAdmission(100, 1000);
+        admission.onDequeue(500 * MS, 0);
+        admission.onDequeue(500 * MS, 2000 * MS);
+        assertTrue(admission.isOverloaded(5));
+        assertFalse(admission.isOverloaded(0));
+        assertFalse(admission.isOverloaded(5));
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.codefork.refine.concurrency;
+
+import com.codefork.refine.ThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void testAIMD() {
+        AIMDLimit limit = new AIMDLimit(4, 1, 10, 0.5, TimeUnit.SECONDS.toNanos(1));
+
+        // grows by one after a full window of successes, when the limit is in use
+        for(int i = 0; i < 4; i++) {
+            limit.onSample(FAST, 4, false);
+        }
+        assertEquals(5, limit.getLimit());
+
+        // doesn't grow when most of the limit is unused
+        for(int i = 0; i < 20; i++) {
+            limit.onSample(FAST, 1, false);
+        }
+        assertEquals(5, limit.getLimit());
+
+        limit.onSample(FAST, 5, true);
+        assertEquals(2, limit.getLimit());
+
+        // timeouts count as drops
+        limit.onSample(TimeUnit.SECONDS.toNanos(2), 2, false);
+        assertEquals(1, limit.getLimit());
+        limit.onSample(FAST, 1, true);
+        assertEquals(1, limit.getLimit());
+    }
+
+    @Test
+    public void testGradient() {
+        GradientLimit limit = new GradientLimit(4, 1, 20);
+
+        // steady latency: limit climbs toward max
+        for(int i = 0; i < 200; i++) {
+            limit.onSample(FAST, limit.getLimit(), false);
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > 4, "limit should grow when latency is flat, was " + grown);
+
+        // latency rises: limit comes down before anything is dropped
+        for(int i = 0; i < 20; i++) {
+            limit.onSample(SLOW, limit.getLimit(), false);
+        }
+        assertTrue(limit.getLimit() < grown, "limit should shrink when latency rises");
+
+        int beforeDrop = limit.getLimit();
+        limit.onSample(FAST, beforeDrop, true);
+        assertEquals(Math.max(1, beforeDrop / 2), limit.getLimit());
+    }
+
+    @Test
+    public void testCreate() {
+        Properties props = new Properties();
+        assertNull(ConcurrencyLimits.create(props, ConcurrencyLimits.ALGORITHM_NONE, 4, 20));
+        assertTrue(ConcurrencyLimits.create(props, ConcurrencyLimits.ALGORITHM_GRADIENT, 4, 20) instanceof GradientLimit);
+
+        props.setProperty(ConcurrencyLimits.PROP_ALGORITHM, "aimd");
+        props.setProperty(ConcurrencyLimits.PROP_MAX, "2");
+        ConcurrencyLimit limit = ConcurrencyLimits.create(props, ConcurrencyLimits.ALGORITHM_NONE, 4, 20);
+        assertTrue(limit instanceof AIMDLimit);
+        assertEquals(2, limit.getLimit());
+
+        props.setProperty(ConcurrencyLimits.PROP_ALGORITHM, "bogus");
+        assertThrows(IllegalArgumentException.class,
+                () -> ConcurrencyLimits.create(props, ConcurrencyLimits.ALGORITHM_NONE, 4, 20));
+    }
+
+    @Test
+    public void testThreadPoolFollowsLimit() {
+        ThreadPool pool = new ThreadPool();
+        pool.setConcurrencyLimit(new AIMDLimit(4, 1, 10, 0.5, TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(4, pool.getPoolSize());
+
+        pool.onSample(FAST, true);
+        assertEquals(2, pool.getPoolSize());
+
+        // shrink/grow are ignored when a limit is in charge
+        pool.shrink();
+        assertEquals(2, pool.getPoolSize());
+
+        pool.shutdown();
+    }
+
+}
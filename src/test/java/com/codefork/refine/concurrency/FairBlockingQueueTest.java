@@ -0,0 +1,67 @@
+package com.codefork.refine.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class FairBlockingQueueTest {
+
+    private static Runnable task(String client, boolean interactive) {
+        return new FairBlockingQueue.ClientTask(new ClientContext(client, interactive), () -> {});
+    }
+
+    /**
+     * @return comma-separated client ids of the queued tasks, in the order they're taken
+     */
+    private static String drainClients(FairBlockingQueue queue) {
+        List<String> clients = new ArrayList<>();
+        Runnable r;
+        while((r = queue.poll()) != null) {
+            clients.add(((FairBlockingQueue.ClientTask) r).getContext().getClientId());
+        }
+        return String.join(",", clients);
+    }
+
+    @Test
+    public void testRoundRobin() {
+        FairBlockingQueue queue = new FairBlockingQueue(new HashMap<>());
+        // heavy client queues up a lot before light client shows up
+        for(int i = 0; i < 5; i++) {
+            queue.offer(task("heavy", false));
+        }
+        queue.offer(task("light", false));
+        queue.offer(task("light", false));
+
+        assertEquals(7, queue.size());
+        assertEquals("heavy,light,heavy,light,heavy,heavy,heavy", drainClients(queue));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testWeights() {
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("a", 2);
+        FairBlockingQueue queue = new FairBlockingQueue(weights);
+        for(int i = 0; i < 4; i++) {
+            queue.offer(task("a", false));
+            queue.offer(task("b", false));
+        }
+        assertEquals("a,a,b,a,a,b,b,b", drainClients(queue));
+    }
+
+    @Test
+    public void testInteractiveFirst() {
+        FairBlockingQueue queue = new FairBlockingQueue(new HashMap<>());
+        queue.offer(task("bulk", false));
+        queue.offer(task("bulk", false));
+        queue.offer(task("someone", true));
+        assertEquals("someone,bulk,bulk", drainClients(queue));
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.codefork.refine.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testReserve() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+
+        // burst is available right away
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+
+        // then callers queue up behind each other, 100ms apart
+        long first = bucket.reserve(now);
+        long second = bucket.reserve(now);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), first, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), second, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertEquals(4, bucket.getAcquired());
+        assertEquals(2, bucket.getThrottled());
+        assertFalse(bucket.tryAcquire());
+
+        // a full second later, the debt is paid off and the bucket has refilled
+        assertEquals(0, bucket.reserve(now + TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void testRefund() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(now));
+        long wait = bucket.reserve(now);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait, TimeUnit.MILLISECONDS.toNanos(1));
+
+        // the waiter gave up, so the next caller doesn't queue up behind it
+        bucket.refund(now);
+        assertEquals(wait, bucket.reserve(now), TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(2, bucket.getAcquired());
+    }
+
+    @Test
+    public void testRegistry() {
+        Properties props = new Properties();
+        props.setProperty("ratelimit.viaf.org.rate", "6");
+        RateLimiterRegistry registry = new RateLimiterRegistry(props);
+
+        TokenBucket bucket = registry.getBucket("viaf.org");
+        assertNotNull(bucket);
+        assertEquals(6, bucket.getRatePerSecond());
+        // burst defaults to rate
+        assertEquals(6, bucket.getBurst());
+        assertSame(bucket, registry.getBucket("viaf.org"));
+        assertNull(registry.getBucket("pub.orcid.org"));
+
+        props.setProperty("ratelimit.default.rate", "1");
+        assertNotNull(new RateLimiterRegistry(props).getBucket("pub.orcid.org"));
+        assertTrue(registry.getBuckets().containsKey("viaf.org"));
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.codefork.refine.controllers;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+/**
+ * Reconciliation queries are handled asynchronously, so MockMvc only
+ * gets the final response after an extra dispatch.
+ */
+public class MvcTestUtil {
+
+    /**
+     * Performs the request, waiting for and dispatching its async result if it has one.
+     */
+    public static MvcResult perform(MockMvc mvc, RequestBuilder requestBuilder) throws Exception {
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        if(result.getRequest().isAsyncStarted()) {
+            result.getAsyncResult();
+            result = mvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result;
+    }
+
+}
@@ -33,7 +33,7 @@ public class OpenLibraryControllerTest {
 
     @Test
     public void testServiceMetadata() throws Exception {
-        MvcResult result = mvc.perform(get("/reconcile/openlibrary")).andReturn();
+        MvcResult result = MvcTestUtil.perform(mvc, get("/reconcile/openlibrary"));
 
         String body = result.getResponse().getContentAsString();
 
@@ -52,7 +52,7 @@ public class OpenLibraryControllerTest {
 
         String json = "{\"q0\":{\"query\": \"through the arc of the rainforest\",\"type\":\"/book/book\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/openlibrary").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/openlibrary").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
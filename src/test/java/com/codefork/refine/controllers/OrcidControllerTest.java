@@ -5,6 +5,8 @@ import com.codefork.refine.datasource.MockConnectionFactoryHelper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -13,6 +15,8 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.Collection;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -33,7 +37,7 @@ public class OrcidControllerTest {
 
     @Test
     public void testOrcidServiceMetaData() throws Exception {
-        MvcResult result = mvc.perform(get("/reconcile/orcid")).andReturn();
+        MvcResult result = MvcTestUtil.perform(mvc, get("/reconcile/orcid"));
 
         String body = result.getResponse().getContentAsString();
 
@@ -60,7 +64,7 @@ public class OrcidControllerTest {
 
         String json = "{\"q0\":{\"query\": \"stephen hawking\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/orcid").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/orcid").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -78,4 +82,41 @@ public class OrcidControllerTest {
         assertFalse(result1.get("match").asBoolean());
     }
 
+    @Test
+    public void testRecordsCached() throws Exception {
+
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://pub.orcid.org/v2.1/search/?rows=3&q=hawking",
+                "/orcid_stephen_hawking.xml");
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://pub.orcid.org/v2.1/search/?rows=3&q=s%20hawking",
+                "/orcid_stephen_hawking.xml");
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://pub.orcid.org/v2.1/0000-0002-4166-6322/record",
+                "/0000-0002-4166-6322.xml");
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://pub.orcid.org/v2.1/0000-0002-5081-5887/record",
+                "/0000-0002-5081-5887.xml");
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://pub.orcid.org/v2.1/0000-0002-9079-593X/record",
+                "/0000-0002-9079-593X.xml");
+
+        MvcTestUtil.perform(mvc, get("/reconcile/orcid").param("queries",
+                "{\"q0\":{\"query\": \"hawking\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}"));
+
+        Mockito.clearInvocations(connectionFactory);
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/orcid").param("queries",
+                "{\"q0\":{\"query\": \"s hawking\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}"));
+
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString()).get("q0").get("result");
+
+        assertEquals(3, results.size());
+        assertEquals("Stephen Hawking", results.get(0).get("name").asText());
+
+        // only the search itself; the records came from the cache
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(1, invocations.size());
+    }
+
 }
@@ -35,7 +35,7 @@ public class OrcidSmartNamesControllerTest {
 
     @Test
     public void testSmartNamesServiceMetaData() throws Exception {
-        MvcResult result = mvc.perform(get("/reconcile/orcid/smartnames")).andReturn();
+        MvcResult result = MvcTestUtil.perform(mvc, get("/reconcile/orcid/smartnames"));
 
         String body = result.getResponse().getContentAsString();
 
@@ -59,7 +59,7 @@ public class OrcidSmartNamesControllerTest {
 
         String json = "{\"q0\":{\"query\": \"Igor Ozerov\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/orcid/smartnames").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/orcid/smartnames").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
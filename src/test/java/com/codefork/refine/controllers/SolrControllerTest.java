@@ -68,7 +68,7 @@ public class SolrControllerTest {
 
         String json = "{\"q0\":{\"query\": \"The Complete Adventures of Sherlock Holmes\",\"type\":\"/book/book\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/solr").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/solr").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -2,8 +2,12 @@ package com.codefork.refine.controllers;
 
 import com.codefork.refine.Application;
 import com.codefork.refine.Config;
+import com.codefork.refine.concurrency.CircuitOpenException;
+import com.codefork.refine.concurrency.CoDelAdmission;
 import com.codefork.refine.datasource.ConnectionFactory;
+import com.codefork.refine.datasource.DataSource;
 import com.codefork.refine.datasource.MockConnectionFactoryHelper;
+import com.codefork.refine.datasource.stats.CounterType;
 import com.codefork.refine.viaf.VIAF;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -24,13 +28,24 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -43,6 +58,7 @@ public class VIAFControllerTest {
             super();
             Properties props = new Properties();
             props.setProperty(Config.PROP_CACHE_TTL, String.valueOf(TTL_SECONDS));
+            props.setProperty(Config.PROP_CACHE_TTL_REVALIDATE, "3600");
             merge(props);
         }
     }
@@ -76,7 +92,7 @@ public class VIAFControllerTest {
 
     @Test
     public void testServiceMetadata() throws Exception {
-        MvcResult result = mvc.perform(get("/reconcile/viaf")).andReturn();
+        MvcResult result = MvcTestUtil.perform(mvc, get("/reconcile/viaf"));
 
         String body = result.getResponse().getContentAsString();
 
@@ -97,7 +113,7 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"},\"q1\":{\"query\":\"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -125,8 +141,40 @@ public class VIAFControllerTest {
         assertFalse(result2.get("match").asBoolean());
     }
 
+    @Test
+    public void testSearchMultipleStreaming() throws Exception {
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22wittgenstein%22&sortKeys=holdingscount&maximumRecords=3",
+                "/wittgenstein_personalnames.xml");
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22shakespeare%22&sortKeys=holdingscount&maximumRecords=3",
+                "/shakespeare.xml");
+
+        String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"},\"q1\":{\"query\":\"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json)
+                .accept(DataSource.NDJSON));
+
+        assertTrue(mvcResult.getResponse().getContentType().startsWith(DataSource.NDJSON));
+
+        // one object per line, each with a single key
+        String[] lines = mvcResult.getResponse().getContentAsString().trim().split("\n");
+        assertEquals(2, lines.length);
+
+        Map<String, JsonNode> byKey = new HashMap<>();
+        for(String line : lines) {
+            JsonNode node = new ObjectMapper().readTree(line);
+            assertEquals(1, node.size());
+            String key = node.fieldNames().next();
+            byKey.put(key, node.get(key));
+        }
+
+        assertEquals("96994048", byKey.get("q0").get("result").get(0).get("id").asText());
+        assertEquals("24609378", byKey.get("q1").get("result").get(0).get("id").asText());
+    }
+
     public JsonNode doSearchSingle(String queryValue) throws Exception {
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("query", queryValue)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("query", queryValue));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -212,7 +260,7 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -254,7 +302,7 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"steinbeck\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -296,7 +344,7 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"nabokov\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf/NSK").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf/NSK").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -337,7 +385,7 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -378,7 +426,7 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"ncjecerence\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -398,26 +446,337 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         JsonNode results = new ObjectMapper()
                 .readTree(mvcResult.getResponse().getContentAsString())
                 .get("q0").get("result");
         assertEquals(3, results.size());
 
-        mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        assertEquals(3, results.size());
+
+        JsonNode results2 = new ObjectMapper()
+                .readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertEquals(3, results2.size());
+
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+
+        assertEquals(1, invocations.size());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22Shakespeare,%20William,%201564-1616.%22&sortKeys=holdingscount&maximumRecords=3",
+                "/shakespeare_exact.xml", 2);
+
+        String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        viaf.setCacheSoftTtlMs(200);
+        try {
+            MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+
+            // past the soft TTL but not the hard one
+            Thread.sleep(400);
+
+            MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+            JsonNode results = new ObjectMapper()
+                    .readTree(mvcResult.getResponse().getContentAsString())
+                    .get("q0").get("result");
+            assertEquals(3, results.size());
+
+            // the stale entry was served, and refreshed in the background
+            long waitUntil = System.currentTimeMillis() + 2000;
+            while(Mockito.mockingDetails(connectionFactory).getInvocations().size() < 2
+                    && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+        } finally {
+            viaf.setCacheSoftTtlMs(0);
+        }
+
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(2, invocations.size());
+    }
+
+    @Test
+    public void testErrorCached() throws Exception {
+        // nothing is expected, so the connection factory returns null and the search fails
+        String json = "{\"q0\":{\"query\": \"outage\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        viaf.setCacheErrorTtlMs(10000);
+        try {
+            for(int i = 0; i < 2; i++) {
+                MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+                JsonNode results = new ObjectMapper()
+                        .readTree(mvcResult.getResponse().getContentAsString())
+                        .get("q0").get("result");
+                assertEquals(0, results.size());
+            }
+        } finally {
+            viaf.setCacheErrorTtlMs(0);
+        }
+
+        // neither the retry nor the second request went upstream
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(1, invocations.size());
+    }
+
+    @Test
+    public void testCacheSharedAcrossCaseAndLimit() throws Exception {
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22Shakespeare,%20William,%201564-1616.%22&sortKeys=holdingscount&maximumRecords=5",
+                "/shakespeare_exact.xml");
+
+        String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+        String json2 = "{\"q0\":{\"query\": \"shakespeare,  william, 1564-1616.\",\"limit\":2,\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        viaf.setCacheFetchLimit(5);
+        try {
+            MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+            JsonNode results = new ObjectMapper()
+                    .readTree(mvcResult.getResponse().getContentAsString())
+                    .get("q0").get("result");
+            assertEquals(3, results.size());
+            assertTrue(results.get(0).get("match").asBoolean());
+
+            mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json2));
+            JsonNode results2 = new ObjectMapper()
+                    .readTree(mvcResult.getResponse().getContentAsString())
+                    .get("q0").get("result");
+            // cut down to the limit, and formatted for the different case
+            assertEquals(2, results2.size());
+            assertEquals(results.get(0).get("id").asText(), results2.get(0).get("id").asText());
+            assertFalse(results2.get(0).get("match").asBoolean());
+            assertTrue(results2.get(0).get("score").asDouble() < results.get(0).get("score").asDouble());
+        } finally {
+            viaf.setCacheFetchLimit(0);
+        }
+
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(1, invocations.size());
+    }
+
+    @Test
+    public void testCaseVariantFormattedForItsOwnText() throws Exception {
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22shakespeare,%20%20william,%201564-1616.%22&sortKeys=holdingscount&maximumRecords=3",
+                "/shakespeare_exact.xml");
+
+        String json = "{\"q0\":{\"query\": \"shakespeare,  william, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+        String json2 = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        JsonNode results = new ObjectMapper()
+                .readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertFalse(results.get(0).get("match").asBoolean());
+
+        // the exact name is picked for this query, as if it had been searched for
+        mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json2));
+        JsonNode results2 = new ObjectMapper()
+                .readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertEquals(results.get(0).get("id").asText(), results2.get(0).get("id").asText());
+        assertEquals("Shakespeare, William, 1564-1616.", results2.get(0).get("name").asText());
+        assertTrue(results2.get(0).get("match").asBoolean());
+
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(1, invocations.size());
+    }
+
+    @Test
+    public void testTypedQueryFromUntypedCache() throws Exception {
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.mainHeadingEl%20all%20%22wittgenstein%22&sortKeys=holdingscount&maximumRecords=3",
+                "/wittgenstein.xml");
+
+        String json = "{\"q0\":{\"query\": \"wittgenstein\"}}";
+        String json2 = "{\"q0\":{\"query\": \"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        JsonNode results = new ObjectMapper()
+                .readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
         assertEquals(3, results.size());
 
+        mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json2));
         JsonNode results2 = new ObjectMapper()
                 .readTree(mvcResult.getResponse().getContentAsString())
                 .get("q0").get("result");
         assertEquals(3, results2.size());
+        assertEquals(results.get(0).get("id").asText(), results2.get(0).get("id").asText());
+
+        // the typed query was answered by filtering the untyped results
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(1, invocations.size());
+    }
+
+    @Test
+    public void testDuplicateQueriesCoalesced() throws Exception {
+
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22Shakespeare,%20William,%201564-1616.%22&sortKeys=holdingscount&maximumRecords=3",
+                "/shakespeare_exact.xml");
+
+        String query = "{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}";
+        String json = "{\"q0\":" + query + ",\"q1\":" + query + ",\"q2\":" + query + "}";
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+
+        JsonNode root = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+
+        assertEquals(3, root.size());
+        for(String key : new String[] { "q0", "q1", "q2" }) {
+            JsonNode results = root.get(key).get("result");
+            assertEquals(3, results.size());
+            assertEquals("96994048", results.get(0).get("id").asText());
+        }
 
         Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
 
         assertEquals(1, invocations.size());
     }
 
+    @Test
+    public void testRetryAfterTooManyRequests() throws Exception {
+        String url = "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22Shakespeare,%20William,%201564-1616.%22&sortKeys=holdingscount&maximumRecords=3";
+
+        HttpURLConnection tooManyRequests = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(tooManyRequests.getInputStream()).thenThrow(new IOException("Server returned HTTP response code: 429 for URL: " + url));
+        Mockito.when(tooManyRequests.getResponseCode()).thenReturn(429);
+        Mockito.when(tooManyRequests.getHeaderField("Retry-After")).thenReturn("1");
+
+        HttpURLConnection ok = mockConnectionFactoryHelper.createMockHttpURLConnection("/shakespeare_exact.xml");
+
+        Mockito.when(connectionFactory.createConnection(url)).thenReturn(tooManyRequests, ok);
+
+        String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        long start = System.currentTimeMillis();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        long elapsed = System.currentTimeMillis() - start;
+
+        JsonNode results = new ObjectMapper()
+                .readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertEquals(3, results.size());
+
+        // Retry-After should have been honored
+        assertTrue(elapsed >= 1000);
+
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+
+        assertEquals(2, invocations.size());
+    }
+
+    @Test
+    public void testRequestDeadline() throws Exception {
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22shakespeare%22&sortKeys=holdingscount&maximumRecords=3",
+                "/shakespeare.xml");
+
+        HttpURLConnection slow = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(slow.getInputStream()).thenAnswer(invocation -> {
+            Thread.sleep(5000);
+            return getClass().getResourceAsStream("/wittgenstein_personalnames.xml");
+        });
+        Mockito.when(connectionFactory.createConnection(
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22wittgenstein%22&sortKeys=holdingscount&maximumRecords=3"))
+                .thenReturn(slow);
+
+        String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"},\"q1\":{\"query\":\"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        int deadlineExceededBefore = countDeadlineExceeded();
+
+        viaf.setRequestDeadlineMs(1000);
+        try {
+            long start = System.currentTimeMillis();
+            MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+            long elapsed = System.currentTimeMillis() - start;
+
+            JsonNode root = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+
+            assertEquals(3, root.get("q0").get("result").size());
+            // cut off by the deadline
+            assertEquals(0, root.get("q1").get("result").size());
+            assertTrue(elapsed < 4000);
+        } finally {
+            viaf.setRequestDeadlineMs(0);
+        }
+
+        assertEquals(deadlineExceededBefore + 1, countDeadlineExceeded());
+    }
+
+    private int countDeadlineExceeded() {
+        // the largest bucket, so this isn't thrown off by interval boundaries
+        List<Map<String, Object>> buckets = viaf.getStats().generateReport().getStats();
+        return ((Number) buckets.get(buckets.size() - 1).get(CounterType.DEADLINE_EXCEEDED.getJsonKeyName())).intValue();
+    }
+
+    private long countInLargestBucket(CounterType counterType) {
+        List<Map<String, Object>> buckets = viaf.getStats().generateReport().getStats();
+        return ((Number) buckets.get(buckets.size() - 1).get(counterType.getJsonKeyName())).longValue();
+    }
+
+    @Test
+    public void testCompressedResponse() throws Exception {
+        byte[] xml;
+        try (InputStream in = getClass().getResourceAsStream("/shakespeare.xml")) {
+            xml = in.readAllBytes();
+        }
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(xml);
+        }
+
+        HttpURLConnection conn = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(conn.getInputStream()).thenReturn(new ByteArrayInputStream(gzipped.toByteArray()));
+        Mockito.when(conn.getContentEncoding()).thenReturn("gzip");
+        Mockito.when(connectionFactory.createConnection(
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22shakespeare%22&sortKeys=holdingscount&maximumRecords=3"))
+                .thenReturn(conn);
+
+        long bytesInBefore = countInLargestBucket(CounterType.BYTES_IN);
+        long bytesDecodedBefore = countInLargestBucket(CounterType.BYTES_DECODED);
+
+        String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertEquals(3, results.size());
+        assertEquals("96994048", results.get(0).get("id").asText());
+
+        Mockito.verify(conn).setRequestProperty("Accept-Encoding", "gzip, deflate");
+        assertEquals(bytesInBefore + gzipped.size(), countInLargestBucket(CounterType.BYTES_IN));
+        assertEquals(bytesDecodedBefore + xml.length, countInLargestBucket(CounterType.BYTES_DECODED));
+    }
+
+    @Test
+    public void testShedWhenOverloaded() throws Exception {
+        String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        viaf.getThreadPool().setAdmission(new CoDelAdmission(1, 1) {
+            @Override
+            public boolean isOverloaded(int queueSize) {
+                return true;
+            }
+        });
+        try {
+            mvc.perform(get("/reconcile/viaf").param("queries", json))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().exists("Retry-After"));
+        } finally {
+            viaf.getThreadPool().setAdmission(null);
+        }
+
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(0, invocations.size());
+    }
+
     @Test
     public void testExpireCache() throws Exception {
         mockConnectionFactoryHelper.expect(connectionFactory,
@@ -426,7 +785,7 @@ public class VIAFControllerTest {
 
         String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         JsonNode results = new ObjectMapper()
                 .readTree(mvcResult.getResponse().getContentAsString())
@@ -436,7 +795,7 @@ public class VIAFControllerTest {
         // sleep past the TTL
         Thread.sleep((TTL_SECONDS + 1) * 1000);
 
-        mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
         assertEquals(3, results.size());
 
         JsonNode results2 = new ObjectMapper()
@@ -449,9 +808,102 @@ public class VIAFControllerTest {
         assertEquals(2, invocations.size());
     }
 
+    @Test
+    public void testRevalidateExpiredCache() throws Exception {
+        String url = "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22shakespeare%22&sortKeys=holdingscount&maximumRecords=3";
+
+        HttpURLConnection conn = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(conn.getInputStream()).thenReturn(getClass().getResourceAsStream("/shakespeare.xml"));
+        Mockito.when(conn.getHeaderField("ETag")).thenReturn("\"v1\"");
+
+        HttpURLConnection notModified = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(notModified.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        Mockito.when(notModified.getResponseCode()).thenReturn(HttpURLConnection.HTTP_NOT_MODIFIED);
+
+        Mockito.when(connectionFactory.createConnection(url)).thenReturn(conn, notModified);
+
+        String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+        MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+
+        long revalidatedBefore = countInLargestBucket(CounterType.REVALIDATED);
+
+        // sleep past the TTL
+        Thread.sleep((TTL_SECONDS + 1) * 1000);
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertEquals(3, results.size());
+        assertEquals("96994048", results.get(0).get("id").asText());
+
+        Mockito.verify(conn, Mockito.never()).setRequestProperty(Mockito.eq("If-None-Match"), Mockito.anyString());
+        Mockito.verify(notModified).setRequestProperty("If-None-Match", "\"v1\"");
+        assertEquals(revalidatedBefore + 1, countInLargestBucket(CounterType.REVALIDATED));
+
+        // renewed, so it's served from the cache again
+        MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        Mockito.verify(connectionFactory, Mockito.times(2)).createConnection(url);
+    }
+
+    @Test
+    public void testStaleServedWhenRevalidationFails() throws Exception {
+        String url = "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22shakespeare%22&sortKeys=holdingscount&maximumRecords=3";
+
+        HttpURLConnection conn = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(conn.getInputStream()).thenReturn(getClass().getResourceAsStream("/shakespeare.xml"));
+        Mockito.when(conn.getHeaderField("ETag")).thenReturn("\"v1\"");
+
+        HttpURLConnection failing = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(failing.getInputStream()).thenThrow(new IOException("Server returned HTTP response code: 500"));
+
+        Mockito.when(connectionFactory.createConnection(url)).thenReturn(conn, failing);
+
+        String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+        MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+
+        long staleHitsBefore = countInLargestBucket(CounterType.STALE_HITS);
+
+        // sleep past the TTL
+        Thread.sleep((TTL_SECONDS + 1) * 1000);
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertEquals(3, results.size());
+        assertEquals("96994048", results.get(0).get("id").asText());
+        assertEquals(staleHitsBefore + 1, countInLargestBucket(CounterType.STALE_HITS));
+    }
+
+    @Test
+    public void testStaleServedWhenCircuitOpen() throws Exception {
+        String url = "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22shakespeare%22&sortKeys=holdingscount&maximumRecords=3";
+
+        HttpURLConnection conn = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(conn.getInputStream()).thenReturn(getClass().getResourceAsStream("/shakespeare.xml"));
+        Mockito.when(conn.getHeaderField("ETag")).thenReturn("\"v1\"");
+
+        Mockito.when(connectionFactory.createConnection(url))
+                .thenReturn(conn)
+                .thenThrow(new CircuitOpenException("www.viaf.org"));
+
+        String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+        MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+
+        long circuitOpenBefore = countInLargestBucket(CounterType.CIRCUIT_OPEN);
+
+        // sleep past the TTL
+        Thread.sleep((TTL_SECONDS + 1) * 1000);
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString())
+                .get("q0").get("result");
+        assertEquals(3, results.size());
+        assertEquals(circuitOpenBefore + 1, countInLargestBucket(CounterType.CIRCUIT_OPEN));
+    }
+
     @Test
     public void testCors() throws Exception {
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").header("Origin", "http://testo.com")).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").header("Origin", "http://testo.com"));
 
         assertEquals("*", mvcResult.getResponse().getHeaderValue("Access-Control-Allow-Origin"));
     }
@@ -459,6 +911,7 @@ public class VIAFControllerTest {
     @AfterEach
     public void cleanup() throws Exception {
         cacheManager.getCache(Application.CACHE_DEFAULT).clear();
+        cacheManager.getCache(Application.CACHE_VIAF_CLUSTERS).clear();
     }
 
 }
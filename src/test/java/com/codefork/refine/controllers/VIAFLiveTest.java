@@ -32,7 +32,7 @@ public class VIAFLiveTest {
 
         String json = "{\"q0\":{\"query\": \"shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString(Charset.defaultCharset());
 
@@ -57,7 +57,7 @@ public class VIAFLiveTest {
 
         String json = "{\"q0\":{\"query\": \"Nabokov, Vladimir Vladimirovič\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf/NSK").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf/NSK").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString(Charset.defaultCharset());
 
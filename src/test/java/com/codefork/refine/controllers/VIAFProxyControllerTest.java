@@ -5,6 +5,8 @@ import com.codefork.refine.datasource.MockConnectionFactoryHelper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -13,6 +15,8 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.Collection;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -34,7 +38,7 @@ public class VIAFProxyControllerTest {
 
     @Test
     public void testProxyMetaData() throws Exception {
-        MvcResult result = mvc.perform(get("/reconcile/viafproxy/LC")).andReturn();
+        MvcResult result = MvcTestUtil.perform(mvc, get("/reconcile/viafproxy/LC"));
 
         String body = result.getResponse().getContentAsString();
 
@@ -53,7 +57,7 @@ public class VIAFProxyControllerTest {
 
         String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viafproxy/LC").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viafproxy/LC").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -82,6 +86,35 @@ public class VIAFProxyControllerTest {
         assertFalse(result3.get("match").asBoolean());
     }
 
+    @Test
+    public void testClustersSharedAcrossServices() throws Exception {
+        mockConnectionFactoryHelper.expect(connectionFactory,
+                "https://www.viaf.org/viaf/search?query=local.personalNames%20all%20%22William%20Shakespeare%22&sortKeys=holdingscount&maximumRecords=3",
+                "/shakespeare_exact.xml");
+
+        String json = "{\"q0\":{\"query\": \"William Shakespeare\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
+        JsonNode results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString()).get("q0").get("result");
+        assertEquals("96994048", results.get(0).get("id").asText());
+
+        // every cluster has an LC name, so both LC services can use the clusters fetched above
+        mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viafproxy/LC").param("queries", json));
+        results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString()).get("q0").get("result");
+        assertEquals(3, results.size());
+        assertEquals("n78095332", results.get(0).get("id").asText());
+        assertEquals("Shakespeare, William, 1564-1616.", results.get(0).get("name").asText());
+
+        mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf/LC").param("queries", json));
+        results = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString()).get("q0").get("result");
+        assertEquals(3, results.size());
+        assertEquals("96994048", results.get(0).get("id").asText());
+        assertEquals("Shakespeare, William, 1564-1616.", results.get(0).get("name").asText());
+
+        Collection<Invocation> invocations = Mockito.mockingDetails(connectionFactory).getInvocations();
+        assertEquals(1, invocations.size());
+    }
+
     /**
      * VIAF gives a URL for the BNF source record ID. this test
      * checks that we use the ID parsed out of the "sid" XML element instead.
@@ -95,7 +128,7 @@ public class VIAFProxyControllerTest {
 
         String json = "{\"q0\":{\"query\": \"Shakespeare, William, 1564-1616.\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viafproxy/BNF").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viafproxy/BNF").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -137,7 +170,7 @@ public class VIAFProxyControllerTest {
 
         String json = "{\"q0\":{\"query\": \"Jean-François Alexandre 1804 1874\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viafproxy/BNF").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viafproxy/BNF").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -180,7 +213,7 @@ public class VIAFProxyControllerTest {
 
         String json = "{\"q0\":{\"query\": \"hegel\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viafproxy/DNB").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viafproxy/DNB").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
@@ -214,7 +247,7 @@ public class VIAFProxyControllerTest {
      */
     @Test
     public void testCors() throws Exception {
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viafproxy/LC").header("Origin", "http://testo.com")).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viafproxy/LC").header("Origin", "http://testo.com"));
 
         assertEquals("*", mvcResult.getResponse().getHeaderValue("Access-Control-Allow-Origin"));
     }
@@ -23,7 +23,7 @@ public class VIAFSourceSpecificControllerTest {
 
     @Test
     public void testProxyMetaData() throws Exception {
-        MvcResult result = mvc.perform(get("/reconcile/viaf/LC")).andReturn();
+        MvcResult result = MvcTestUtil.perform(mvc, get("/reconcile/viaf/LC"));
 
         String body = result.getResponse().getContentAsString();
 
@@ -38,7 +38,7 @@ public class VIAFSourceSpecificControllerTest {
      */
     @Test
     public void testCors() throws Exception {
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf/LC").header("Origin", "http://testo.com")).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf/LC").header("Origin", "http://testo.com"));
 
         assertEquals("*", mvcResult.getResponse().getHeaderValue("Access-Control-Allow-Origin"));
     }
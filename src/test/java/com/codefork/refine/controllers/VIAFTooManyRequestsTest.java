@@ -39,6 +39,7 @@ public class VIAFTooManyRequestsTest {
 
                     String error = "Server returned HTTP response code: 429 for URL:" + url;
                     when(conn.getInputStream()).thenThrow(new IOException(error));
+                    when(conn.getResponseCode()).thenReturn(429);
                     return conn;
                 }
             };
@@ -60,7 +61,7 @@ public class VIAFTooManyRequestsTest {
 
         String json = "{\"q0\":{\"query\": \"whatever\",\"type_strict\":\"should\"}}";
 
-        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+        MvcResult mvcResult = MvcTestUtil.perform(mvc, get("/reconcile/viaf").param("queries", json));
 
         String body = mvcResult.getResponse().getContentAsString();
 
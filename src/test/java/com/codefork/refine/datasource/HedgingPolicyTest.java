@@ -0,0 +1,132 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.ThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HedgingPolicyTest {
+
+    private static HedgingPolicy createPolicy() {
+        Properties props = new Properties();
+        props.setProperty(HedgingPolicy.PROP_ENABLED, "true");
+        props.setProperty(HedgingPolicy.PROP_MIN_SAMPLES, "10");
+        props.setProperty(HedgingPolicy.PROP_MIN_DELAY_MS, "10");
+        return new HedgingPolicy(props);
+    }
+
+    @Test
+    public void testHedgeDelay() {
+        HedgingPolicy policy = createPolicy();
+        for(int i = 1; i <= 9; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i * 10));
+        }
+        assertEquals(-1, policy.getHedgeDelayMs());
+
+        for(int i = 10; i <= 100; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i * 10));
+        }
+        assertEquals(950, policy.getHedgeDelayMs());
+    }
+
+    @Test
+    public void testSlowAttemptIsHedged() throws Exception {
+        HedgingPolicy policy = createPolicy();
+        for(int i = 0; i < 20; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+
+        ThreadPool pool = new ThreadPool(2);
+        try {
+            AtomicInteger attempts = new AtomicInteger();
+            AtomicBoolean firstInterrupted = new AtomicBoolean();
+            long start = System.currentTimeMillis();
+            String result = policy.call(() -> {
+                if(attempts.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        firstInterrupted.set(true);
+                        Thread.currentThread().interrupt();
+                    }
+                    return "first";
+                }
+                return "hedge";
+            }, pool, null);
+
+            assertEquals("hedge", result);
+            assertEquals(2, attempts.get());
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertTrue(firstInterrupted.get());
+            // the interrupt that cancelled the first attempt doesn't leak out
+            assertFalse(Thread.currentThread().isInterrupted());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoHedgeWithoutIdleThread() throws Exception {
+        HedgingPolicy policy = createPolicy();
+        for(int i = 0; i < 20; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+
+        ThreadPool pool = new ThreadPool(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CountDownLatch busy = new CountDownLatch(1);
+            pool.submit(() -> {
+                busy.countDown();
+                release.await();
+                return null;
+            });
+            busy.await();
+
+            AtomicInteger attempts = new AtomicInteger();
+            String result = policy.call(() -> {
+                attempts.incrementAndGet();
+                Thread.sleep(300);
+                return "first";
+            }, pool, null);
+
+            assertEquals("first", result);
+            assertEquals(1, attempts.get());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy();
+        for(int i = 0; i < 20; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+
+        ThreadPool pool = new ThreadPool(2);
+        try {
+            AtomicInteger attempts = new AtomicInteger();
+            String result = policy.call(() -> {
+                attempts.incrementAndGet();
+                Thread.sleep(300);
+                return "first";
+            }, pool, null);
+
+            assertEquals("first", result);
+            assertEquals(1, attempts.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.concurrency.CircuitBreaker;
+import com.codefork.refine.concurrency.CircuitBreakerRegistry;
+import com.codefork.refine.concurrency.CircuitOpenException;
+import com.codefork.refine.concurrency.RateLimiterRegistry;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PooledHttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            byte[] body = "<record/>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/busy", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "5");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.createContext("/stall", exchange -> {
+            exchange.sendResponseHeaders(200, 100);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("<record>".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(2000);
+            } catch (InterruptedException | IOException e) {
+                // client gave up
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private ConnectionFactory createConnectionFactory() {
+        Properties props = new Properties();
+        props.setProperty(PooledHttpClient.PROP_VERSION, "HTTP_1_1");
+        return new LiveConnectionFactory(new RateLimiterRegistry(props), new CircuitBreakerRegistry(props),
+                new PooledHttpClient(props));
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        HttpURLConnection conn = createConnectionFactory().createConnection(baseUrl + "/ok");
+        conn.setRequestProperty("Accept", "application/xml");
+
+        try (InputStream in = conn.getInputStream()) {
+            assertEquals("<record/>", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("application/xml", conn.getContentType());
+        conn.disconnect();
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        HttpURLConnection conn = createConnectionFactory().createConnection(baseUrl + "/busy");
+
+        assertThrows(IOException.class, conn::getInputStream);
+        assertEquals(503, conn.getResponseCode());
+        assertEquals("5", conn.getHeaderField("Retry-After"));
+    }
+
+    @Test
+    public void testCircuitBreakerOpens() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PooledHttpClient.PROP_VERSION, "HTTP_1_1");
+        props.setProperty(CircuitBreakerRegistry.PROP_PREFIX + "127.0.0.1" + CircuitBreakerRegistry.MIN_CALLS_SUFFIX, "2");
+        CircuitBreakerRegistry circuitBreakerRegistry = new CircuitBreakerRegistry(props);
+        ConnectionFactory connectionFactory = new LiveConnectionFactory(new RateLimiterRegistry(props),
+                circuitBreakerRegistry, new PooledHttpClient(props));
+
+        for(int i = 0; i < 2; i++) {
+            HttpURLConnection conn = connectionFactory.createConnection(baseUrl + "/busy");
+            assertThrows(IOException.class, conn::getInputStream);
+        }
+
+        long start = System.currentTimeMillis();
+        assertThrows(CircuitOpenException.class, () -> connectionFactory.createConnection(baseUrl + "/ok"));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakerRegistry.getBreaker("127.0.0.1").getState());
+    }
+
+    @Test
+    public void testStalledBodyTimesOut() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PooledHttpClient.PROP_VERSION, "HTTP_1_1");
+        CircuitBreakerRegistry circuitBreakerRegistry = new CircuitBreakerRegistry(props);
+        ConnectionFactory connectionFactory = new LiveConnectionFactory(new RateLimiterRegistry(props),
+                circuitBreakerRegistry, new PooledHttpClient(props));
+
+        HttpURLConnection conn = connectionFactory.createConnection(baseUrl + "/stall");
+        conn.setReadTimeout(500);
+
+        long start = System.currentTimeMillis();
+        try (InputStream in = conn.getInputStream()) {
+            assertThrows(SocketTimeoutException.class, in::readAllBytes);
+        }
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        // the breaker counts it as a failure
+        assertEquals(100.0, circuitBreakerRegistry.getBreaker("127.0.0.1").getFailureRate());
+    }
+
+    @Test
+    public void testHostPermits() {
+        PooledHttpClient.HostPermits permits = new PooledHttpClient.HostPermits(1);
+
+        assertTrue(permits.acquire().isDone());
+        CompletableFuture<Void> waiting = permits.acquire();
+        assertFalse(waiting.isDone());
+        assertEquals(1, permits.getWaiting());
+
+        // handed straight to the waiter
+        permits.release();
+        assertTrue(waiting.isDone());
+        assertEquals(1, permits.getInUse());
+
+        permits.release();
+        assertEquals(0, permits.getInUse());
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(-1, HttpStatusException.parseRetryAfter(null));
+        assertEquals(-1, HttpStatusException.parseRetryAfter("garbage"));
+        assertEquals(120000, HttpStatusException.parseRetryAfter(" 120 "));
+        // dates in the past mean "now"
+        assertEquals(0, HttpStatusException.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    public void testRetryDelay() {
+        Properties props = new Properties();
+        props.setProperty(RetryPolicy.PROP_MAX_ATTEMPTS, "3");
+        props.setProperty(RetryPolicy.PROP_BACKOFF_INITIAL_MS, "100");
+        RetryPolicy policy = new RetryPolicy(props);
+
+        SearchResult tooManyRequests = new SearchResult("q0", SearchResult.ErrorType.TOO_MANY_REQUESTS);
+
+        long delay = policy.getRetryDelay(tooManyRequests, 1);
+        assertTrue(delay >= 50 && delay <= 100);
+
+        delay = policy.getRetryDelay(tooManyRequests, 2);
+        assertTrue(delay >= 100 && delay <= 200);
+
+        assertEquals(-1, policy.getRetryDelay(tooManyRequests, 3));
+
+        SearchResult withRetryAfter = new SearchResult("q0", SearchResult.ErrorType.TOO_MANY_REQUESTS, 5000);
+        assertEquals(5000, policy.getRetryDelay(withRetryAfter, 1));
+
+        SearchResult clientError = new SearchResult("q0", SearchResult.ErrorType.CLIENT_ERROR);
+        assertEquals(-1, policy.getRetryDelay(clientError, 1));
+    }
+
+    @Test
+    public void testBudget() {
+        Properties props = new Properties();
+        props.setProperty(RetryPolicy.PROP_BUDGET_MAX, "2");
+        props.setProperty(RetryPolicy.PROP_BUDGET_RATIO, "0.5");
+        RetryPolicy policy = new RetryPolicy(props);
+
+        SearchResult error = new SearchResult("q0", SearchResult.ErrorType.SERVER_ERROR);
+
+        assertTrue(policy.getRetryDelay(error, 1) >= 0);
+        assertTrue(policy.getRetryDelay(error, 1) >= 0);
+        // budget exhausted
+        assertEquals(-1, policy.getRetryDelay(error, 1));
+
+        policy.recordFirstAttempt();
+        policy.recordFirstAttempt();
+        assertTrue(policy.getRetryDelay(error, 1) >= 0);
+    }
+
+}
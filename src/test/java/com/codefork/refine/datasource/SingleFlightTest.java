@@ -0,0 +1,49 @@
+package com.codefork.refine.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testFollowerGivesUpAtItsDeadline() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return singleFlight.execute("key", () -> {
+                    started.countDown();
+                    release.await();
+                    return "value";
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Deadline.setCurrent(Deadline.after(100));
+        try {
+            long start = System.currentTimeMillis();
+            assertThrows(DeadlineExceededException.class, () -> singleFlight.execute("key", () -> "follower's own"));
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        } finally {
+            Deadline.setCurrent(Deadline.NONE);
+        }
+
+        // the leader isn't affected by a follower giving up
+        release.countDown();
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+}
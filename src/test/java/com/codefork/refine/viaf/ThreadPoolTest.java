@@ -1,9 +1,23 @@
 package com.codefork.refine.viaf;
 
+import com.codefork.refine.Config;
 import com.codefork.refine.ThreadPool;
+import com.codefork.refine.ThreadPoolFactory;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ThreadPoolTest {
 
@@ -41,4 +55,87 @@ public class ThreadPoolTest {
 
         pool.shutdown();
     }
+
+    @Test
+    public void testVirtualThreadsLimitedByPoolSize() throws Exception {
+        // on runtimes without virtual threads, this falls back to a regular pool,
+        // which should behave the same way
+        ThreadPool pool = new ThreadPool(2, true);
+
+        pool.shrink();
+        assertEquals(1, pool.getPoolSize());
+        pool.setPoolSize(3);
+        assertEquals(3, pool.getPoolSize());
+
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxRunning = new AtomicInteger(0);
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for(int i = 0; i < 12; i++) {
+            futures.add(pool.submit(() -> {
+                int n = running.incrementAndGet();
+                maxRunning.accumulateAndGet(n, Math::max);
+                Thread.sleep(50);
+                running.decrementAndGet();
+                return n;
+            }));
+        }
+        for(Future<Integer> future : futures) {
+            future.get();
+        }
+
+        assertTrue(maxRunning.get() <= 3);
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void testSharedPoolsAreRefCounted() throws Exception {
+        ThreadPoolFactory factory = new ThreadPoolFactory(new Config());
+
+        ThreadPool pool = factory.getSharedThreadPool("shared");
+        assertSame(pool, factory.getSharedThreadPool("shared"));
+
+        factory.releaseThreadPool(pool);
+        // still in use by the second caller
+        assertEquals("ok", pool.submit(() -> "ok").get());
+
+        factory.releaseThreadPool(pool);
+        assertThrows(RejectedExecutionException.class, () -> pool.submit(() -> "too late"));
+        // the rejected task isn't counted as queued
+        assertEquals(0, pool.getQueueSize());
+
+        // a new pool is created for the next user
+        ThreadPool newPool = factory.getSharedThreadPool("shared");
+        assertNotSame(pool, newPool);
+        factory.releaseThreadPool(newPool);
+    }
+
+    @Test
+    public void testTryAdmit() throws Exception {
+        ThreadPool pool = new ThreadPool(1);
+        pool.setMaxQueueSize(2);
+
+        CountDownLatch release = new CountDownLatch(1);
+        pool.submit(() -> { release.await(); return null; });
+        // wait for the first task to start, so the rest are queued
+        while(pool.getActiveCount() == 0 || pool.getQueueSize() > 0) {
+            Thread.sleep(10);
+        }
+        pool.submit(() -> null);
+        pool.submit(() -> null);
+
+        assertEquals(2, pool.getQueueSize());
+        assertFalse(pool.tryAdmit(1));
+
+        release.countDown();
+        while(pool.getQueueSize() > 0) {
+            Thread.sleep(10);
+        }
+        // an empty queue admits a batch of any size
+        assertTrue(pool.tryAdmit(10));
+
+        pool.shutdown();
+    }
+
 }